@@ -0,0 +1,216 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * BufferAllocator that picks the memory by budget.
+ * <p>
+ * Requests are served from JVM heap until the heap budget is used up, then from direct buffers until
+ * the direct budget is used up, then from a {@link FileBufferAllocator} created on first use.
+ * The budgets count what is handed out and not {@link #release(ByteBuffer) released} yet.
+ *
+ * @author Joel
+ * @see #estimateDiffMemory(long, long)
+ */
+public class AdaptiveBufferAllocator implements BufferAllocator, TempFileSource, Closeable {
+    // rough heap of one bzip2 level 9 compressor
+    static final long COMPRESSOR_MEMORY = 8L << 20;
+
+    private final long heapBudget;
+    private final long directBudget;
+    private final String tempDir;
+    private long heapUsed;
+    private long directUsed;
+    private long fileUsed;
+    private FileBufferAllocator files;
+    // tier of the buffers not released yet, a direct buffer is a MappedByteBuffer too
+    private final Map<ByteBuffer, Tier> tiers = new IdentityHashMap<>();
+
+    private enum Tier {
+        HEAP, DIRECT, FILE
+    }
+
+    /**
+     * Half of the budget (at most a quarter of the max heap) on heap, the rest direct,
+     * temp files in <tt>java.io.tmpdir</tt>.
+     *
+     * @param budget memory budget in bytes
+     */
+    public AdaptiveBufferAllocator(long budget) {
+        this(Math.min(budget / 2, Runtime.getRuntime().maxMemory() / 4),
+                budget - Math.min(budget / 2, Runtime.getRuntime().maxMemory() / 4),
+                System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * @param heapBudget   bytes served from JVM heap
+     * @param directBudget bytes served from direct buffers
+     * @param tempDir      directory of the temp files
+     */
+    public AdaptiveBufferAllocator(long heapBudget, long directBudget, String tempDir) {
+        if (heapBudget < 0 || directBudget < 0) {
+            throw new IllegalArgumentException("invalid budget");
+        }
+        this.heapBudget = heapBudget;
+        this.directBudget = directBudget;
+        this.tempDir = tempDir;
+    }
+
+    @Override
+    public synchronized ByteBuffer allocate(int size) throws IllegalArgumentException, IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("invalid buffer size " + size);
+        }
+        if (heapUsed + size <= heapBudget) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            heapUsed += size;
+            tiers.put(buffer, Tier.HEAP);
+            return buffer;
+        }
+        if (directUsed + size <= directBudget) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            directUsed += size;
+            tiers.put(buffer, Tier.DIRECT);
+            return buffer;
+        }
+        ByteBuffer buffer = files().allocate(Math.max(size, 1));
+        fileUsed += size;
+        if (size == 0) {
+            buffer.limit(0);
+        }
+        tiers.put(buffer, Tier.FILE);
+        return buffer;
+    }
+
+    /**
+     * Give the buffer back to the budget of its tier, a direct buffer is freed and a mapped buffer
+     * is unmapped at once. Buffers not allocated here, or released already, are ignored.
+     *
+     * @param buffer the buffer returned by {@link #allocate(int)}
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public synchronized void release(ByteBuffer buffer) throws IOException {
+        Tier tier = tiers.remove(buffer);
+        if (tier == Tier.HEAP) {
+            heapUsed = Math.max(0, heapUsed - buffer.capacity());
+        } else if (tier == Tier.DIRECT) {
+            directUsed = Math.max(0, directUsed - buffer.capacity());
+            Unmapper.unmap(buffer);
+        } else if (tier == Tier.FILE) {
+            fileUsed = Math.max(0, fileUsed - buffer.capacity());
+            files.release(buffer);
+        }
+    }
+
+    /**
+     * Create a temp file by the {@link FileBufferAllocator}, the spilled patch blocks go there.
+     *
+     * @param prefix temp file name prefix
+     * @return the temp file opened for read and write
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public synchronized RandomAccessFile createTempFile(String prefix) throws IOException {
+        return files().createTempFile(prefix);
+    }
+
+    @Override
+    public synchronized void deleteTempFile(RandomAccessFile file) throws IOException {
+        if (files != null) {
+            files.deleteTempFile(file);
+        }
+    }
+
+    private FileBufferAllocator files() throws IOException {
+        if (files == null) {
+            files = new FileBufferAllocator(tempDir);
+        }
+        return files;
+    }
+
+    /**
+     * @return bytes handed out from JVM heap
+     */
+    public synchronized long getHeapUsed() {
+        return heapUsed;
+    }
+
+    /**
+     * @return bytes handed out from direct buffers
+     */
+    public synchronized long getDirectUsed() {
+        return directUsed;
+    }
+
+    /**
+     * @return bytes handed out from temp files
+     */
+    public synchronized long getFileUsed() {
+        return fileUsed;
+    }
+
+    /**
+     * Predict the peak memory of {@link BSDiff#diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator)}
+     * besides the old and new files: <tt>8 * (oldsize + 1)</tt> bytes of allocated memory for the sort,
+     * the three compressors, and the compressed diff and extra blocks, at most about the new size.
+     *
+     * @param oldsize length of old file
+     * @param newsize length of new file
+     * @return estimated peak memory in bytes
+     */
+    public static long estimateDiffMemory(long oldsize, long newsize) {
+        return 8 * (oldsize + 1) + 3 * COMPRESSOR_MEMORY + newsize;
+    }
+
+    /**
+     * Close and delete the temp files.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (files != null) {
+            files.close();
+            files = null;
+            // unmapped by the close
+            tiers.values().removeIf(tier -> tier == Tier.FILE);
+            fileUsed = 0;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-pass of the scan phase for near identical files.
+ * <p>
+ * The new file is looked up in the {@link AnchorTable} of the old file at every position, a hit is verified
+ * and extended both ways. Exact runs of at least {@value #MIN_RUN} bytes are emitted directly as tuples with
+ * zero diff bytes, and only the gaps between them are scanned with the suffix array.
+ * <p>
+ * Inside a long match that is broken by a few changed bytes, the scan searches the suffix array at almost every
+ * byte, so skipping the runs saves most of the work when only a small part of the file changed.
+ *
+ * @author Joel
+ */
+final class AnchorMatcher implements ControlSink {
+    static final int MIN_RUN = 1024;
+
+    private final ByteBuffer old;
+    private final SuffixArray I;
+    private final LcpIndex lcp;
+    private final ByteBuffer new0;
+    private final ControlSink sink;
+    // the last run, its seek is known when the gap after it is scanned
+    private boolean pending;
+    private int runNew, runOld, runLen;
+
+    private AnchorMatcher(ByteBuffer old, SuffixArray I, LcpIndex lcp, ByteBuffer new0, ControlSink sink) {
+        this.old = old;
+        this.I = I;
+        this.lcp = lcp;
+        this.new0 = new0;
+        this.sink = sink;
+    }
+
+    /**
+     * Scan the whole new file, same as {@link BSDiff#scan} with the runs found by anchors taken out.
+     *
+     * @param old     old file
+     * @param I       suffix array of old file
+     * @param lcp     LCP of the suffix array, may be null
+     * @param new0    new file
+     * @param anchors anchors of old file
+     * @param sink    control tuples receiver
+     * @throws IOException If some other I/O error occurs
+     */
+    static void scan(ByteBuffer old, SuffixArray I, LcpIndex lcp, ByteBuffer new0, AnchorTable anchors,
+                     ControlSink sink) throws IOException {
+        new AnchorMatcher(old, I, lcp, new0, sink).scan(anchors);
+    }
+
+    private void scan(AnchorTable anchors) throws IOException {
+        final int oldsize = old.limit();
+        final int newsize = new0.limit();
+        final int L = AnchorTable.ANCHOR_LENGTH;
+
+        int gapStart = 0, gapOld = 0;
+        int h = 0, filled = 0;
+        for (int i = 0; i < newsize; i++) {
+            h = AnchorTable.roll(h, new0.get(i), filled >= L ? new0.get(i - L) : 0);
+            if (++filled < L) {
+                continue;
+            }
+            int start = i - L + 1;
+            long hit = anchors.find(h);
+            if (hit < 0 || hit > oldsize - L || BSDiff.matchlen(old, (int) hit, new0, start, 0, L) < L) {
+                continue;
+            }
+            int o = (int) hit;
+            while (start > gapStart && o > 0 && old.get(o - 1) == new0.get(start - 1)) {
+                start--;
+                o--;
+            }
+            int len = BSDiff.matchlen(old, o, new0, start, 0, Math.min(oldsize - o, newsize - start));
+            if (len < MIN_RUN) {
+                continue;
+            }
+
+            gap(gapStart, start, gapOld, o);
+            pending = true;
+            runNew = start;
+            runOld = o;
+            runLen = len;
+
+            gapStart = start + len;
+            gapOld = o + len;
+            i = gapStart - 1;
+            h = 0;
+            filled = 0;
+        }
+        gap(gapStart, newsize, gapOld, BSDiff.END);
+    }
+
+    // Scan new[lo, hi) starting at old position lastpos, then seek to nextpos
+    private void gap(int lo, int hi, int lastpos, int nextpos) throws IOException {
+        if (lo == hi) {
+            int seek = nextpos == BSDiff.END ? 0 : nextpos - lastpos;
+            if (pending) {
+                flush(seek);
+            } else if (seek != 0) {
+                // patching starts at old position 0
+                sink.accept(0, 0, 0, 0, seek);
+            }
+            return;
+        }
+        BSDiff.scan(old, I, lcp, new0, lo, hi, lastpos, nextpos, this);
+    }
+
+    private void flush(int seek) throws IOException {
+        pending = false;
+        sink.accept(runNew, runOld, runLen, 0, seek);
+    }
+
+    // Tuples of the gaps, the old position is already at lastpos after the run
+    @Override
+    public void accept(long newpos, long oldpos, long difflen, long extralen, long seek) throws IOException {
+        if (pending) {
+            flush(0);
+        }
+        sink.accept(newpos, oldpos, difflen, extralen, seek);
+    }
+}
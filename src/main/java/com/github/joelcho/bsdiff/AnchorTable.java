@@ -0,0 +1,152 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+/**
+ * Old file positions sampled every few bytes, by the hash of the {@value #ANCHOR_LENGTH} bytes at them.
+ * <p>
+ * The hash is a polynomial rolling hash (Rabin-Karp), so the new file can be looked up at every position
+ * as in rsync, with {@link #roll(int, byte, byte)}.
+ *
+ * @author Joel
+ * @see WindowedDiff
+ * @see AnchorMatcher
+ */
+final class AnchorTable {
+    // bytes of an anchor
+    static final int ANCHOR_LENGTH = 32;
+    static final int MIN_ANCHOR_STEP = 64;
+    static final int MAX_ANCHORS = 1 << 22;
+    private static final int HASH_BASE = 0x01000193;
+    // HASH_BASE ^ ANCHOR_LENGTH
+    private static final int HASH_POW;
+
+    static {
+        int pow = 1;
+        for (int i = 0; i < ANCHOR_LENGTH; i++) pow *= HASH_BASE;
+        HASH_POW = pow;
+    }
+
+    private final int[] hashes;
+    // old position + 1, 0 is empty
+    private final long[] positions;
+    private final int mask;
+
+    private AnchorTable(int capacity) {
+        hashes = new int[capacity];
+        positions = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @param old old file
+     * @return the anchors of old file, at most {@value #MAX_ANCHORS}, or null if it is shorter than one anchor
+     */
+    static AnchorTable build(LargeByteBuffer old) {
+        return build(old, MAX_ANCHORS);
+    }
+
+    /**
+     * The table has at most <tt>4 * maxAnchors</tt> slots of an int hash and a long position,
+     * <tt>48 * maxAnchors</tt> bytes.
+     *
+     * @param old        old file
+     * @param maxAnchors max count of anchors, the step between them grows with old file to stay below it
+     * @return the anchors of old file, or null if it is shorter than one anchor
+     */
+    static AnchorTable build(LargeByteBuffer old, int maxAnchors) {
+        long n = old.size() - ANCHOR_LENGTH;
+        if (n < 0) {
+            return null;
+        }
+        long step = Math.max(MIN_ANCHOR_STEP, (n + maxAnchors) / maxAnchors);
+        int count = (int) (n / step + 1);
+        AnchorTable table = new AnchorTable(Integer.highestOneBit(count) << 2);
+        for (long pos = 0; pos <= n; pos += step) {
+            table.add(hash(old, pos), pos);
+        }
+        return table;
+    }
+
+    int capacity() {
+        return hashes.length;
+    }
+
+    static int hash(LargeByteBuffer b, long pos) {
+        int h = 0;
+        for (int i = 0; i < ANCHOR_LENGTH; i++) {
+            h = h * HASH_BASE + b.get(pos + i);
+        }
+        return h;
+    }
+
+    /**
+     * @param h   hash of the previous {@value #ANCHOR_LENGTH} bytes
+     * @param in  the next byte
+     * @param out the byte leaving the anchor, 0 while the first anchor is not complete
+     * @return hash of the anchor ending at in
+     */
+    static int roll(int h, byte in, byte out) {
+        return h * HASH_BASE + in - HASH_POW * out;
+    }
+
+    private void add(int h, long pos) {
+        int i = mix(h) & mask;
+        while (positions[i] != 0) {
+            if (hashes[i] == h) {
+                return; // keep the first one
+            }
+            i = (i + 1) & mask;
+        }
+        hashes[i] = h;
+        positions[i] = pos + 1;
+    }
+
+    /**
+     * @param h anchor hash
+     * @return an old position of the hash, or -1 if there is none
+     */
+    long find(int h) {
+        int i = mix(h) & mask;
+        while (positions[i] != 0) {
+            if (hashes[i] == h) {
+                return positions[i] - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
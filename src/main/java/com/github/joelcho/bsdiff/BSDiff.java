@@ -31,14 +31,17 @@
 // IDE            : IntelliJ IDEA community edition
 package com.github.joelcho.bsdiff;
 
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
-
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * BSDiff v4.3
@@ -50,9 +53,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class BSDiff {
     static final byte[] VERSION = "BSDIFF40".getBytes();
     static final int HEADER_SIZE = 32;
+    // no more range after the scanned one
+    static final int END = Integer.MIN_VALUE;
+    static final int MIN_RANGE = 1 << 16;
+    // biggest old file of the int path, its suffix array must fit in one buffer
+    static final int SMALL_SIZE = Integer.MAX_VALUE / 4 - 1;
 
     public static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba) throws IOException {
-        diff(old, new0, out, ba, new QSufSortByteBufferImpl(ba));
+        // the sort scratch space lives only as long as this diff
+        try (BufferArena arena = new BufferArena(ba)) {
+            diff(old, new0, out, ba, new QSufSortByteBufferImpl(arena));
+        }
     }
 
     /**
@@ -67,6 +78,10 @@ public class BSDiff {
      * 32	??	Bzip2ed ctrl block
      * ??	??	Bzip2ed diff block
      * ??	??	Bzip2ed extra block
+     * <p>
+     * The common prefix and suffix of the files are matched first, only the middle of old file is sorted
+     * and only the middle of new file is scanned. Identical files, appended and truncated files
+     * need no sort at all.
      *
      * @param old      old file
      * @param new0     new file
@@ -76,140 +91,300 @@ public class BSDiff {
      * @throws IOException If some other I/O error occurs
      */
     public static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, QSufSort qSufSort) throws IOException {
+        diff(old, new0, out, ba, qSufSort, Compression.SEQUENTIAL);
+    }
+
+    /**
+     * Same as {@link #diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator, QSufSort)},
+     * but the blocks are compressed with the codec, the magic of the header records it.
+     *
+     * @param old      old file
+     * @param new0     new file
+     * @param out      diff output
+     * @param ba       temp buffer creator
+     * @param qSufSort the QSufSort implementation
+     * @param codec    the block codec
+     * @throws IOException If some other I/O error occurs
+     * @see SectionCodec
+     */
+    public static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, QSufSort qSufSort,
+                            SectionCodec codec) throws IOException {
+        diff(old, new0, out, ba, qSufSort, Compression.SEQUENTIAL.withCodec(codec));
+    }
+
+    // Diff the middle between common prefix and suffix
+    static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, QSufSort qSufSort,
+                     Compression compression) throws IOException {
         final int oldsize = old.limit();
-        int newsize = new0.limit();
-        IntBuffer I = qSufSort.sort(old, oldsize);
+        final int newsize = new0.limit();
+        final int prefix = Mismatch.mismatch(old, 0, new0, 0, 0, Math.min(oldsize, newsize));
+        final int suffix = commonSuffix(old, new0, Math.min(oldsize, newsize) - prefix);
+        if (prefix == 0 && suffix == 0 && oldsize != 0 && newsize != 0) {
+            IntBuffer I = qSufSort.sort(old, oldsize);
+            try {
+                diff(old, new0, out, ba, SuffixArray.of(I), null, compression);
+            } finally {
+                qSufSort.release(I);
+            }
+            return;
+        }
+        final int oldmid = oldsize - prefix - suffix;
+        final int newmid = newsize - prefix - suffix;
+
+        PatchWriter writer = new PatchWriter(old, new0, out, ba, compression);
+        try {
+            if (oldmid == 0 || newmid == 0) {
+                // identical, appended, truncated, or only inserted or removed in the middle
+                if (prefix != 0 || newmid != 0 || oldmid != 0) {
+                    writer.accept(0, 0, prefix, newmid, oldmid);
+                }
+            } else {
+                ByteBuffer o = slice(old, prefix, oldmid), n = slice(new0, prefix, newmid);
+                IntBuffer I = qSufSort.sort(o, oldmid);
+                try {
+                    if (prefix != 0) {
+                        writer.accept(0, 0, prefix, 0, 0);
+                    }
+                    scan(o, SuffixArray.of(I), null, n, 0, newmid, 0, oldmid,
+                            (newpos, oldpos, difflen, extralen, seek) ->
+                                    writer.accept(prefix + newpos, prefix + oldpos, difflen, extralen, seek));
+                } finally {
+                    qSufSort.release(I);
+                }
+            }
+            if (suffix != 0) {
+                writer.accept(newsize - suffix, oldsize - suffix, suffix, 0, 0);
+            }
+            writer.finish();
+        } finally {
+            writer.abort();
+        }
+    }
 
-        out.write(new byte[HEADER_SIZE]); // header placeholder
-        out.flush();
-        BZip2CompressorOutputStream bzOut = new BZip2CompressorOutputStream(out, 9);
+    // Length of common suffix of a and b, at most max
+    static int commonSuffix(ByteBuffer a, ByteBuffer b, int max) {
+        int apos = a.limit(), bpos = b.limit();
+        int i = 0;
+        if (a.order() == b.order()) {
+            while (i + Long.BYTES <= max && a.getLong(apos - i - Long.BYTES) == b.getLong(bpos - i - Long.BYTES)) {
+                i += Long.BYTES;
+            }
+        }
+        while (i < max && a.get(apos - i - 1) == b.get(bpos - i - 1)) {
+            i++;
+        }
+        return i;
+    }
 
-        int scan = 0, len = 0;
-        int lastscan = 0, lastpos = 0, lastoffset = 0;
-        int oldscore, scsc;
-        int s, Sf, lenf, Sb, lenb;
-        int overlap, Ss, lens;
-        int i;
-        int dblen = 0, eblen = 0;
+    static ByteBuffer slice(ByteBuffer buffer, int begin, int len) {
+        ByteBuffer b = buffer.duplicate();
+        b.limit(begin + len).position(begin);
+        return b.slice();
+    }
 
-        ByteBuffer db = ba.allocate((oldsize + 1) * 4);
-        ByteBuffer eb = ba.allocate((oldsize + 1) * 4);
+    /**
+     * Same as {@link #diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator, QSufSort)},
+     * but skips the sort phase by using a prebuilt index of the old file.
+     *
+     * @param old   old file
+     * @param new0  new file
+     * @param out   diff output
+     * @param ba    temp buffer creator
+     * @param index the index built from old file
+     * @throws IOException If some other I/O error occurs
+     * @see SuffixArrayIndex
+     */
+    public static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, SuffixArrayIndex index) throws IOException {
+        if (index.getOldSize() != old.limit()) {
+            throw new IllegalArgumentException("index is not built from old file");
+        }
+        diff(old, new0, out, ba, SuffixArray.of(index.getSuffixArray()), null);
+    }
 
-        AtomicInteger pos = new AtomicInteger(0);
-        while (scan < newsize) {
-            oldscore = 0;
+    static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, SuffixArray I,
+                     LcpIndex lcp) throws IOException {
+        diff(old, new0, out, ba, I, lcp, Compression.SEQUENTIAL);
+    }
 
-            for (scsc = scan += len; scan < newsize; scan++) {
-                len = search(I, old, oldsize, subRef(new0, scan), newsize - scan,
-                        0, oldsize, pos);
+    /**
+     * Diff files bigger than 2 GB.
+     * <p>
+     * Small files take the int indexed path of
+     * {@link #diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator)}, the others take a long indexed path
+     * with a 64-bit suffix array, which takes <tt>16 * (n + 1)</tt> bytes from the allocator while sorting.
+     * Use a {@link FileBufferAllocator} for such files.
+     *
+     * @param old  old file
+     * @param new0 new file
+     * @param out  diff output
+     * @param ba   temp buffer creator
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void diff(LargeByteBuffer old, LargeByteBuffer new0, SeekableOutputStream out, BufferAllocator ba) throws IOException {
+        if (old.size() < SMALL_SIZE && new0.isSmall()) {
+            diff(old.asByteBuffer(), new0.asByteBuffer(), out, ba);
+        } else {
+            LargeBSDiff.diff(old, new0, out, ba, Compression.SEQUENTIAL);
+        }
+    }
 
-                for (; scsc < scan + len; scsc++)
-                    if ((scsc + lastoffset < oldsize) &&
-                            (old.get(scsc + lastoffset) == new0.get(scsc)))
-                        oldscore++;
+    /**
+     * Windowed diff with bounded memory, for old files whose suffix array does not fit in memory or on disk.
+     * <p>
+     * The new file is cut into <tt>windowSize / 2</tt> bytes windows, each one is diffed against
+     * a <tt>windowSize</tt> bytes window of the old file found by anchor hashes, and only the old window
+     * is sorted. Besides the sort of one window it takes <tt>1.5 * windowSize</tt> bytes from the allocator,
+     * and up to <tt>0.75 * windowSize</tt> bytes of heap (at most 192 MB) for the anchors: one per 64 bytes
+     * of a window, spread over the whole old file, in a table of 12 bytes slots at least a quarter full.
+     * The patch is a normal BSDIFF40 patch, but bigger than a full diff when the data moves farther than the window.
+     *
+     * @param old        old file
+     * @param new0       new file
+     * @param out        diff output
+     * @param ba         temp buffer creator
+     * @param qSufSort   the QSufSort implementation to sort the old windows
+     * @param windowSize old window size in bytes
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void diff(LargeByteBuffer old, LargeByteBuffer new0, SeekableOutputStream out, BufferAllocator ba,
+                            QSufSort qSufSort, int windowSize) throws IOException {
+        WindowedDiff.diff(old, new0, out, ba, qSufSort, windowSize);
+    }
 
-                if (((len == oldscore) && (len != 0)) ||
-                        (len > oldscore + 8)) break;
+    static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, SuffixArray I,
+                     LcpIndex lcp, Compression compression) throws IOException {
+        diff(old, new0, out, ba, I, lcp, compression, null);
+    }
 
-                if ((scan + lastoffset < oldsize) &&
-                        (old.get(scan + lastoffset) == new0.get(scan)))
-                    oldscore--;
+    // The caller owns all the buffers, they must not be used by others at the same time
+    static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, SuffixArray I,
+                     LcpIndex lcp, Compression compression, AnchorTable anchors) throws IOException {
+        PatchWriter writer = new PatchWriter(old, new0, out, ba, compression);
+        try {
+            if (anchors == null) {
+                scan(old, I, lcp, new0, 0, new0.limit(), 0, END, writer);
+            } else {
+                AnchorMatcher.scan(old, I, lcp, new0, anchors, writer);
             }
+            writer.finish();
+        } finally {
+            writer.abort();
+        }
+    }
 
-            if ((len != oldscore) || (scan == newsize)) {
-                s = 0;
-                Sf = 0;
-                lenf = 0;
-                for (i = 0; (lastscan + i < scan) && (lastpos + i < oldsize); ) {
-                    if (old.get(lastpos + i) == new0.get(lastscan + i)) s++;
-                    i++;
-                    if (s * 2 - i > Sf * 2 - lenf) {
-                        Sf = s;
-                        lenf = i;
-                    }
-                }
+    /**
+     * Parallel scan phase, the new file is split into ranges that are scanned concurrently
+     * against the shared suffix array.
+     * <p>
+     * A match never crosses a range boundary and each range (except the first) starts at a guessed old position,
+     * so the patch is slightly bigger than the sequential one. With ranges of a few MB the cost is
+     * usually less than 1% of the patch size, it grows as ranges get smaller.
+     *
+     * @param old         old file
+     * @param new0        new file
+     * @param out         diff output
+     * @param ba          temp buffer creator
+     * @param I           suffix array of old file
+     * @param lcp         LCP of the suffix array, may be null
+     * @param pool        the pool to run the ranges
+     * @param ranges      maximal count of ranges, ranges are at least {@value #MIN_RANGE} bytes
+     * @param compression how the blocks are compressed
+     * @throws IOException If some other I/O error occurs
+     */
+    static void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, SuffixArray I,
+                     LcpIndex lcp, ForkJoinPool pool, int ranges, Compression compression) throws IOException {
+        final int oldsize = old.limit();
+        final int newsize = new0.limit();
+        ranges = Math.max(1, Math.min(ranges, newsize / MIN_RANGE));
+
+        // range k is [starts[k], starts[k + 1]) of new file, scanning starts at old position lastpos[k]
+        final int[] starts = new int[ranges + 1];
+        final int[] lastpos = new int[ranges + 1];
+        for (int k = 0; k <= ranges; k++) {
+            starts[k] = (int) ((long) newsize * k / ranges);
+            lastpos[k] = (int) ((long) oldsize * k / ranges);
+        }
 
-                lenb = 0;
-                if (scan < newsize) {
-                    s = 0;
-                    Sb = 0;
-                    for (i = 1; (scan >= lastscan + i) && (pos.get() >= i); i++) {
-                        if (old.get(pos.get() - i) == new0.get(scan - i)) s++;
-                        if (s * 2 - i > Sb * 2 - lenb) {
-                            Sb = s;
-                            lenb = i;
-                        }
-                    }
-                }
+        List<ForkJoinTask<ControlList>> tasks = new ArrayList<>(ranges);
+        for (int k = 0; k < ranges; k++) {
+            final int lo = starts[k], hi = starts[k + 1], pos = lastpos[k];
+            final int next = k == ranges - 1 ? END : lastpos[k + 1];
+            final ByteBuffer o = old.duplicate(), n = new0.duplicate();
+            tasks.add(pool.submit(() -> {
+                ControlList list = new ControlList();
+                scan(o, I, lcp, n, lo, hi, pos, next, list);
+                return list;
+            }));
+        }
 
-                if (lastscan + lenf > scan - lenb) {
-                    overlap = (lastscan + lenf) - (scan - lenb);
-                    s = 0;
-                    Ss = 0;
-                    lens = 0;
-                    for (i = 0; i < overlap; i++) {
-                        if (new0.get(lastscan + lenf - overlap + i) ==
-                                old.get(lastpos + lenf - overlap + i)) s++;
-                        if (new0.get(scan - lenb + i) ==
-                                old.get(pos.get() - lenb + i)) s--;
-                        if (s > Ss) {
-                            Ss = s;
-                            lens = i + 1;
-                        }
+        PatchWriter writer = new PatchWriter(old, new0, out, ba, compression);
+        try {
+            for (ForkJoinTask<ControlList> task : tasks) {
+                ControlList list;
+                try {
+                    list = task.get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
                     }
-
-                    lenf += lens - overlap;
-                    lenb -= lens;
+                    throw new IOException(cause);
                 }
-
-                for (i = 0; i < lenf; i++)
-                    db.put(dblen + i, (byte) (new0.get(lastscan + i) - old.get(lastpos + i)));
-                for (i = 0; i < (scan - lenb) - (lastscan + lenf); i++)
-                    eb.put(eblen + i, new0.get(lastscan + lenf + i));
-
-                dblen += lenf;
-                eblen += (scan - lenb) - (lastscan + lenf);
-
-                bzOut.write(offtout(lenf));
-                bzOut.write(offtout((scan - lenb) - (lastscan + lenf)));
-                bzOut.write(offtout((pos.get() - lenb) - (lastpos + lenf)));
-
-                lastscan = scan - lenb;
-                lastpos = pos.get() - lenb;
-                lastoffset = pos.get() - scan;
+                list.replay(writer);
             }
+            writer.finish();
+        } finally {
+            writer.abort();
         }
-        bzOut.flush();
-        bzOut.finish();
-
-        // Compute size of compressed ctrl data
-        long ctrlDataLen = out.position() - HEADER_SIZE;
+    }
 
-        // Write compressed diff data
-        bzOut = new BZip2CompressorOutputStream(out, 9);
-        writeByteBufferTo(db, dblen, bzOut);
-        bzOut.flush();
-        bzOut.finish();
+    /**
+     * Scan new[lo, hi) and emit the control tuples, see {@link LargeBSDiff#scan}.
+     *
+     * @param old     old file
+     * @param I       suffix array of old file
+     * @param lcp     LCP of the suffix array, may be null
+     * @param new0    new file
+     * @param lo      start of range
+     * @param hi      end of range
+     * @param lastpos old position of the range start
+     * @param nextpos old position of the next range start, or {@link #END} if no more range
+     * @param sink    control tuples receiver
+     * @throws IOException If some other I/O error occurs
+     */
+    static void scan(ByteBuffer old, SuffixArray I, LcpIndex lcp, ByteBuffer new0, int lo, int hi, int lastpos, int nextpos,
+                     ControlSink sink) throws IOException {
+        LargeBSDiff.scan(LargeByteBuffer.wrap(old), i -> I.get((int) i), lcp, LargeByteBuffer.wrap(new0),
+                lo, hi, lastpos, nextpos, sink);
+    }
 
-        // Compute size of compressed diff data
-        long diffDataLen = out.position() - HEADER_SIZE - ctrlDataLen;
+    // Control tuples of a range, kept until the ranges before it are written
+    static final class ControlList implements ControlSink {
+        private long[] tuples = new long[5 * 64];
+        private int size;
 
-        // Write compressed extra data
-        bzOut = new BZip2CompressorOutputStream(out, 9);
-        writeByteBufferTo(eb, eblen, bzOut);
-        bzOut.flush();
-        bzOut.finish();
+        @Override
+        public void accept(long newpos, long oldpos, long difflen, long extralen, long seek) {
+            if (size + 5 > tuples.length) {
+                tuples = Arrays.copyOf(tuples, tuples.length * 2);
+            }
+            tuples[size++] = newpos;
+            tuples[size++] = oldpos;
+            tuples[size++] = difflen;
+            tuples[size++] = extralen;
+            tuples[size++] = seek;
+        }
 
-        // fill header
-        out.seek(0);
-        out.write(VERSION);
-        out.write(offtout(ctrlDataLen));
-        out.write(offtout(diffDataLen));
-        out.write(offtout(newsize));
-        out.flush();
+        void replay(ControlSink sink) throws IOException {
+            for (int i = 0; i < size; i += 5) {
+                sink.accept(tuples[i], tuples[i + 1], tuples[i + 2], tuples[i + 3], tuples[i + 4]);
+            }
+        }
     }
 
-    private static byte[] offtout(long v) {
+    static byte[] offtout(long v) {
         if (v < 0) {
             byte[] arr = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(-v).array();
             arr[7] |= 0x80;
@@ -218,21 +393,6 @@ public class BSDiff {
         return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(v).array();
     }
 
-    private static void writeByteBufferTo(ByteBuffer buffer, int bufSize, OutputStream out) throws IOException {
-        final int tempBuferSize = 10240;
-        byte[] temp = new byte[tempBuferSize];
-        while (bufSize > tempBuferSize) {
-            buffer.get(temp);
-            out.write(temp);
-            bufSize -= tempBuferSize;
-        }
-        if (bufSize > 0) {
-            temp = new byte[bufSize];
-            buffer.get(temp);
-            out.write(temp);
-        }
-    }
-
     static ByteBuffer subRef(ByteBuffer buffer, int begin) {
         int position = buffer.position();
         buffer.position(begin);
@@ -241,49 +401,8 @@ public class BSDiff {
         return slice;
     }
 
-    private static int matchlen(ByteBuffer oldBuf, int oldsize, ByteBuffer newBuf, int newsize) {
-        int min = Math.min(oldsize, newsize);
-        for (int i = 0; i < min; i++) {
-            if (oldBuf.get(i) != newBuf.get(i)) {
-                return i;
-            }
-        }
-        return min;
-    }
-
-    private static int search(IntBuffer I, ByteBuffer old, int oldsize,
-                              ByteBuffer new0, int newsize, int st, int en, AtomicInteger pos) {
-        int x, y;
-        if (en - st < 2) {
-            x = matchlen(subRef(old, I.get(st)), oldsize - I.get(st), new0, newsize);
-            y = matchlen(subRef(old, I.get(en)), oldsize - I.get(en), new0, newsize);
-
-            if (x > y) {
-                pos.set(I.get(st));
-                return x;
-            } else {
-                pos.set(I.get(en));
-                return y;
-            }
-        }
-
-        x = st + (en - st) / 2;
-        if (memcmp(subRef(old, I.get(x)), new0, Math.min(oldsize - I.get(x), newsize)) < 0) {
-            return search(I, old, oldsize, new0, newsize, x, en, pos);
-        } else {
-            return search(I, old, oldsize, new0, newsize, st, x, pos);
-        }
-    }
-
-    // https://opensource.apple.com/source/tcl/tcl-3.1/tcl/compat/memcmp.c
-    private static int memcmp(ByteBuffer a, ByteBuffer b, int len) {
-        for (int i = 0; i < len; i++) {
-            int x = Byte.toUnsignedInt(a.get(i));
-            int y = Byte.toUnsignedInt(b.get(i));
-            if (x != y) {
-                return x - y;
-            }
-        }
-        return 0;
+    // Length of common prefix of a[apos, apos + len) and b[bpos, bpos + len), the first from bytes are known equal
+    static int matchlen(ByteBuffer a, int apos, ByteBuffer b, int bpos, int from, int len) {
+        return Mismatch.mismatch(a, apos, b, bpos, from, len);
     }
 }
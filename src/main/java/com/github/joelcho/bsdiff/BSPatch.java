@@ -31,21 +31,29 @@
 // IDE            : IntelliJ IDEA community edition
 package com.github.joelcho.bsdiff;
 
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
-
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * BSPatch v4.3
  * <p>
  * original <a href="http://www.daemonology.net/bsdiff/">bsdiff</a>
+ * <p>
+ * The block codec is detected from the header magic, see {@link SectionCodec}.
  *
  * @author Joel
  */
 public class BSPatch {
+    // chunk of the streaming patch, one for the diff and new bytes and one for the old bytes
+    static final int STREAM_BUFFER_SIZE = 16384;
 
     /**
      * Parse new binary size.
@@ -56,7 +64,268 @@ public class BSPatch {
      */
     public static int parseNewSize(ByteBuffer pathBuf) throws IOException {
         Object[] tuple = parseHeader(pathBuf);
-        return ((Long) tuple[3]).intValue();
+        long newsize = (Long) tuple[3];
+        if (newsize > Integer.MAX_VALUE) {
+            throw new IOException("new file is bigger than 2 GB, use LargeByteBuffer");
+        }
+        return (int) newsize;
+    }
+
+    /**
+     * Parse new binary size of a patch that may be bigger than 2 GB.
+     *
+     * @param patch patch buffer
+     * @return the size of new binary file.
+     * @throws IOException If some other I/O error occurs
+     */
+    public static long parseNewSize(LargeByteBuffer patch) throws IOException {
+        Object[] tuple = parseHeader(patch);
+        return (Long) tuple[3];
+    }
+
+    /**
+     * Apply a patch to files bigger than 2 GB, small ones take the int indexed path of
+     * {@link #patch(ByteBuffer, ByteBuffer, ByteBuffer)}.
+     *
+     * @param old   the existing
+     * @param new0  the new
+     * @param patch patch buffer
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void patch(LargeByteBuffer old, LargeByteBuffer new0, LargeByteBuffer patch) throws IOException {
+        if (old.isSmall() && new0.isSmall() && patch.isSmall()) {
+            patch(old.asByteBuffer(), new0.asByteBuffer(), patch.asByteBuffer());
+            return;
+        }
+        final Object[] header = parseHeader(patch);
+        final SectionCodec codec = (SectionCodec) header[0];
+        final long bzctrllen = (Long) header[1];
+        final long bzdatalen = (Long) header[2];
+        final long newsize = (Long) header[3];
+        if (BSDiff.HEADER_SIZE + bzctrllen + bzdatalen > patch.size()) {
+            corruptPatch();
+        }
+        if (newsize > new0.size()) {
+            throw new IOException("short new buffer, require at least " + newsize);
+        }
+        long off = BSDiff.HEADER_SIZE;
+        InputStream cpfbz2 = codec.decompress(patch.inputStream(off, bzctrllen));
+        off += bzctrllen;
+        InputStream dpfbz2 = codec.decompress(patch.inputStream(off, bzdatalen));
+        off += bzdatalen;
+        InputStream epfbz2 = codec.decompress(patch.inputStream(off, patch.size() - off));
+
+        long oldpos = 0, newpos = 0;
+        int i, n;
+        final byte[] buf = new byte[8];
+        final long[] ctrl = new long[3];
+        final byte[] temp = new byte[10240];
+        final byte[] oldTemp = new byte[temp.length];
+        while (newpos < newsize) {
+            // read control data
+            for (i = 0; i <= 2; i++) {
+                if (readFully(cpfbz2, buf, 0, 8) != 8) {
+                    corruptPatch();
+                }
+                ctrl[i] = offtin(buf, 0);
+            }
+
+            // sanity-check
+            if (ctrl[0] < 0 || ctrl[1] < 0 || newpos + ctrl[0] > newsize) {
+                corruptPatch();
+            }
+
+            // read diff string and add old data
+            for (long done = 0; done < ctrl[0]; done += n) {
+                n = (int) Math.min(temp.length, ctrl[0] - done);
+                if (readFully(dpfbz2, temp, 0, n) != n) {
+                    throw new IOException("short read");
+                }
+                ByteAdd.add(temp, 0, old, oldpos + done, n, oldTemp);
+                new0.put(newpos + done, temp, 0, n);
+            }
+
+            // adjust pointers
+            newpos += ctrl[0];
+            oldpos += ctrl[0];
+
+            // sanity-check
+            if (newpos + ctrl[1] > newsize) {
+                corruptPatch();
+            }
+
+            // read extra string
+            for (long done = 0; done < ctrl[1]; done += n) {
+                n = (int) Math.min(temp.length, ctrl[1] - done);
+                if (readFully(epfbz2, temp, 0, n) != n) {
+                    throw new IOException("short read");
+                }
+                new0.put(newpos + done, temp, 0, n);
+            }
+
+            // adjust pointers
+            newpos += ctrl[1];
+            oldpos += ctrl[2];
+        }
+    }
+
+    /**
+     * Same as {@link #patch(SeekableInput, SeekableInput, OutputStream)} on file channels.
+     *
+     * @param old   the existing
+     * @param patch the patch
+     * @param out   new file output
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void patch(FileChannel old, FileChannel patch, WritableByteChannel out) throws IOException {
+        patch(SeekableInput.of(old), SeekableInput.of(patch), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Apply a patch and write new file sequentially, for files of any size with constant memory.
+     * <p>
+     * The old file and the three blocks of the patch are read by positional reads, the diff bytes
+     * are decoded into a {@value #STREAM_BUFFER_SIZE} bytes buffer, the old bytes are added there and
+     * the buffer is written to out. Besides the decompressors it takes two such buffers.
+     *
+     * @param old   the existing
+     * @param patch the patch
+     * @param out   new file output, it is neither flushed nor closed
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void patch(SeekableInput old, SeekableInput patch, OutputStream out) throws IOException {
+        final long patchsize = patch.size();
+
+        final byte[] head = new byte[BSDiff.HEADER_SIZE];
+        if (readFully(patch, 0, head, head.length) != head.length) {
+            corruptPatch();
+        }
+        final Object[] header = parseHeader(head);
+        final SectionCodec codec = (SectionCodec) header[0];
+        final long bzctrllen = (Long) header[1];
+        final long bzdatalen = (Long) header[2];
+        final long newsize = (Long) header[3];
+        if (BSDiff.HEADER_SIZE + bzctrllen + bzdatalen > patchsize) {
+            corruptPatch();
+        }
+        long off = BSDiff.HEADER_SIZE;
+        InputStream cpfbz2 = codec.decompress(new SectionInputStream(patch, off, bzctrllen));
+        off += bzctrllen;
+        InputStream dpfbz2 = codec.decompress(new SectionInputStream(patch, off, bzdatalen));
+        off += bzdatalen;
+        InputStream epfbz2 = codec.decompress(new SectionInputStream(patch, off, patchsize - off));
+        apply(old, newsize, cpfbz2, dpfbz2, epfbz2, out);
+    }
+
+    /**
+     * Apply a patch read from a stream, like a pipe or a socket, and write new file sequentially.
+     * <p>
+     * The ctrl and diff blocks are spooled first, up to 1 MB each in memory and the rest in temp files
+     * of the allocator if it gives temp files, like {@link FileBufferAllocator}, or in <tt>java.io.tmpdir</tt>
+     * otherwise. The extra block is
+     * decompressed straight from the stream, so new file is written while the rest of the patch arrives.
+     *
+     * @param old   the existing
+     * @param patch the patch, read up to the end of the extra block
+     * @param out   new file output, it is neither flushed nor closed
+     * @param ba    spool temp file source
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void patch(SeekableInput old, InputStream patch, OutputStream out, BufferAllocator ba) throws IOException {
+        final byte[] head = new byte[BSDiff.HEADER_SIZE];
+        if (readFully(patch, head, 0, head.length) != head.length) {
+            corruptPatch();
+        }
+        final Object[] header = parseHeader(head);
+        final SectionCodec codec = (SectionCodec) header[0];
+        final long bzctrllen = (Long) header[1];
+        final long bzdatalen = (Long) header[2];
+        final long newsize = (Long) header[3];
+
+        BlockSpill ctrlBlock = new BlockSpill(ba);
+        BlockSpill diffBlock = new BlockSpill(ba);
+        try {
+            spool(patch, ctrlBlock, bzctrllen);
+            spool(patch, diffBlock, bzdatalen);
+            InputStream cpfbz2 = codec.decompress(new BufferedInputStream(ctrlBlock.inputStream(), 8192));
+            InputStream dpfbz2 = codec.decompress(new BufferedInputStream(diffBlock.inputStream(), 8192));
+            InputStream epfbz2 = codec.decompress(new BufferedInputStream(patch, 8192));
+            apply(old, newsize, cpfbz2, dpfbz2, epfbz2, out);
+        } finally {
+            ctrlBlock.discard();
+            diffBlock.discard();
+        }
+    }
+
+    // Copy len bytes of the patch to the spill
+    private static void spool(InputStream in, BlockSpill spill, long len) throws IOException {
+        final byte[] temp = new byte[STREAM_BUFFER_SIZE];
+        for (long done = 0; done < len; ) {
+            int n = in.read(temp, 0, (int) Math.min(temp.length, len - done));
+            if (n < 0) {
+                corruptPatch();
+            }
+            spill.write(temp, 0, n);
+            done += n;
+        }
+    }
+
+    // The loop of the streaming patches
+    private static void apply(SeekableInput old, long newsize, InputStream cpfbz2, InputStream dpfbz2,
+                              InputStream epfbz2, OutputStream out) throws IOException {
+        final long oldsize = old.size();
+        long oldpos = 0, newpos = 0;
+        int i, n;
+        final byte[] buf = new byte[8];
+        final long[] ctrl = new long[3];
+        final byte[] temp = new byte[STREAM_BUFFER_SIZE];
+        final byte[] oldTemp = new byte[STREAM_BUFFER_SIZE];
+        while (newpos < newsize) {
+            // read control data
+            for (i = 0; i <= 2; i++) {
+                if (readFully(cpfbz2, buf, 0, 8) != 8) {
+                    corruptPatch();
+                }
+                ctrl[i] = offtin(buf, 0);
+            }
+
+            // sanity-check
+            if (ctrl[0] < 0 || ctrl[1] < 0 || newpos + ctrl[0] > newsize) {
+                corruptPatch();
+            }
+
+            // read diff string and add old data
+            for (long done = 0; done < ctrl[0]; done += n) {
+                n = (int) Math.min(temp.length, ctrl[0] - done);
+                if (readFully(dpfbz2, temp, 0, n) != n) {
+                    throw new IOException("short read");
+                }
+                ByteAdd.add(temp, 0, old, oldsize, oldpos + done, n, oldTemp);
+                out.write(temp, 0, n);
+            }
+
+            // adjust pointers
+            newpos += ctrl[0];
+            oldpos += ctrl[0];
+
+            // sanity-check
+            if (newpos + ctrl[1] > newsize) {
+                corruptPatch();
+            }
+
+            // read extra string
+            for (long done = 0; done < ctrl[1]; done += n) {
+                n = (int) Math.min(temp.length, ctrl[1] - done);
+                if (readFully(epfbz2, temp, 0, n) != n) {
+                    throw new IOException("short read");
+                }
+                out.write(temp, 0, n);
+            }
+
+            // adjust pointers
+            newpos += ctrl[1];
+            oldpos += ctrl[2];
+        }
     }
 
     /**
@@ -66,34 +335,38 @@ public class BSPatch {
      * @throws IOException If some other I/O error occurs
      */
     public static void patch(ByteBuffer old, ByteBuffer new0, ByteBuffer pathBuf) throws IOException {
-        final int oldsize = old.limit();
-
         final Object[] header = parseHeader(pathBuf);
+        final SectionCodec codec = (SectionCodec) header[0];
         final long bzctrllen = (Long) header[1];
         final long bzdatalen = (Long) header[2];
         final long newsize = (Long) header[3];
         if (bzctrllen < 0 || bzdatalen < 0 | newsize < 0) {
             corruptPatch();
         }
+        if (BSDiff.HEADER_SIZE + bzctrllen + bzdatalen > pathBuf.limit()) {
+            corruptPatch();
+        }
         if (newsize > new0.limit()) {
             throw new IOException("short new buffer, require at least " + newsize);
         }
         int off = BSDiff.HEADER_SIZE;
-        BZip2CompressorInputStream cpfbz2 = mkbzi(pathBuf, off, bzctrllen);
+        InputStream cpfbz2 = mkbzi(pathBuf, off, bzctrllen, codec);
         off += bzctrllen;
-        BZip2CompressorInputStream dpfbz2 = mkbzi(pathBuf, off, bzdatalen);
+        InputStream dpfbz2 = mkbzi(pathBuf, off, bzdatalen, codec);
         off += bzdatalen;
-        BZip2CompressorInputStream epfbz2 = mkbzi(pathBuf, off, pathBuf.limit() - off);
+        InputStream epfbz2 = mkbzi(pathBuf, off, pathBuf.limit() - off, codec);
 
         int oldpos = 0, newpos = 0;
         int i;
         int lenread;
         final byte[] buf = new byte[8];
         final int[] ctrl = new int[3];
+        final byte[] temp = new byte[10240];
+        final byte[] oldTemp = new byte[temp.length];
         while (newpos < newsize) {
             // read control data
             for (i = 0; i <= 2; i++) {
-                lenread = cpfbz2.read(buf);
+                lenread = readFully(cpfbz2, buf, 0, 8);
                 if (lenread != 8) {
                     corruptPatch();
                 }
@@ -105,17 +378,15 @@ public class BSPatch {
                 corruptPatch();
             }
 
-            // read diff string
-            readToByteBuffer(dpfbz2, BSDiff.subRef(new0, newpos), ctrl[0]);
-
-            // add old data to diff string
-            for (i = 0; i < ctrl[0]; i++) {
-                if ((oldpos + i >= 0) && (oldpos + i < oldsize)) {
-                    int pos = newpos + i;
-                    byte b = new0.get(pos);
-                    b += old.get(oldpos + i);
-                    new0.put(pos, b);
+            // read diff string and add old data
+            ByteBuffer target = BSDiff.subRef(new0, newpos);
+            for (int done = 0, n; done < ctrl[0]; done += n) {
+                n = Math.min(temp.length, ctrl[0] - done);
+                if (readFully(dpfbz2, temp, 0, n) != n) {
+                    throw new IOException("short read");
                 }
+                ByteAdd.add(temp, 0, old, oldpos + done, n, oldTemp);
+                target.put(temp, 0, n);
             }
 
             // adjust pointers
@@ -136,6 +407,25 @@ public class BSPatch {
         }
     }
 
+    /**
+     * Same as {@link #patch(ByteBuffer, ByteBuffer, ByteBuffer)}, the blocks are decompressed and applied
+     * on the pool.
+     * <p>
+     * The ctrl block is decoded first, then the diff and extra blocks are decompressed at the same time,
+     * each stream of a multi-stream block on its own thread, see {@link DiffContext#withParallelCompression}.
+     * The decoded bytes are added to old file and written to new file in 1 MB chunks on the pool.
+     * It takes about the size of the decoded diff and extra blocks in heap memory.
+     *
+     * @param old     the existing
+     * @param new0    the new
+     * @param pathBuf patch buffer
+     * @param pool    the pool to decompress and apply
+     * @throws IOException If some other I/O error occurs
+     */
+    public static void patch(ByteBuffer old, ByteBuffer new0, ByteBuffer pathBuf, ForkJoinPool pool) throws IOException {
+        ParallelPatch.patch(old, new0, pathBuf, pool);
+    }
+
     // Read len bytes from in to target
     private static void readToByteBuffer(InputStream in, ByteBuffer target, int len) throws IOException {
         final int tempBuferSize = 10240;
@@ -145,7 +435,7 @@ public class BSPatch {
             buf = new byte[tempBuferSize];
             int s = len / tempBuferSize;
             for (int i = 0; i < s; i++) {
-                int n = in.read(buf);
+                int n = readFully(in, buf, 0, tempBuferSize);
                 if (n != tempBuferSize) {
                     throw new IOException("short read");
                 }
@@ -155,7 +445,7 @@ public class BSPatch {
         }
         if (nread < len) {
             buf = new byte[len - nread];
-            int n = in.read(buf);
+            int n = readFully(in, buf, 0, buf.length);
             if (n != buf.length) {
                 throw new IOException("short read");
             }
@@ -163,30 +453,69 @@ public class BSPatch {
         }
     }
 
+    // Read until len bytes or end of stream, returns the count of bytes read
+    static int readFully(InputStream in, byte[] buf, int off, int len) throws IOException {
+        int nread = 0;
+        while (nread < len) {
+            int n = in.read(buf, off + nread, len - nread);
+            if (n < 0) {
+                break;
+            }
+            nread += n;
+        }
+        return nread;
+    }
+
+    // Read at pos until len bytes or end of input, returns the count of bytes read
+    static int readFully(SeekableInput in, long pos, byte[] buf, int len) throws IOException {
+        int nread = 0;
+        while (nread < len) {
+            int n = in.read(pos + nread, buf, nread, len - nread);
+            if (n < 0) {
+                break;
+            }
+            nread += n;
+        }
+        return nread;
+    }
+
     // corruptPatch Throws an IOException
-    private static void corruptPatch() throws IOException {
+    static void corruptPatch() throws IOException {
         throw new IOException("corrupt patch");
     }
 
-    private static long offtin(byte[] buf, int off) {
+    static long offtin(byte[] buf, int off) {
         assert buf.length > off + 7;
         long v = ByteBuffer.wrap(buf, off, 8).order(ByteOrder.LITTLE_ENDIAN).getLong();
-        return (buf[off + 7] & 0x80) == 0 ? v : -v;
+        // sign and magnitude, the sign bit is not part of the value
+        return (buf[off + 7] & 0x80) == 0 ? v : -(v & Long.MAX_VALUE);
     }
 
-    // [0](string) = version
+    // [0](SectionCodec) = codec
     // [1](Long) = bzctrllen
     // [2](Long) = bzdatalen
     // [3](Long) = newsize
-    private static Object[] parseHeader(ByteBuffer buffer) throws IOException {
+    static Object[] parseHeader(ByteBuffer buffer) throws IOException {
         int pos = buffer.position();
         byte[] header = new byte[BSDiff.HEADER_SIZE];
         buffer.get(header);
         buffer.position(pos);
-        for (int i = 0; i < BSDiff.VERSION.length; i++) {
-            if (BSDiff.VERSION[i] != header[i]) {
-                corruptPatch();
-            }
+        return parseHeader(header);
+    }
+
+    private static Object[] parseHeader(LargeByteBuffer buffer) throws IOException {
+        if (buffer.size() < BSDiff.HEADER_SIZE) {
+            corruptPatch();
+        }
+        byte[] header = new byte[BSDiff.HEADER_SIZE];
+        buffer.get(0, header, 0, header.length);
+        return parseHeader(header);
+    }
+
+    private static Object[] parseHeader(byte[] header) throws IOException {
+        SectionCodec codec = SectionCodecs.forHeader(header);
+        if (codec == null) {
+            corruptPatch();
         }
         long bzctrllen = offtin(header, 8);
         long bzdatalen = offtin(header, 16);
@@ -194,20 +523,48 @@ public class BSPatch {
         if (bzctrllen < 0 || bzdatalen < 0 | newsize < 0) {
             corruptPatch();
         }
-        return new Object[]{new String(header, 0, BSDiff.HEADER_SIZE), bzctrllen, bzdatalen, newsize};
+        return new Object[]{codec, bzctrllen, bzdatalen, newsize};
     }
 
-    // Make bzip2 input stream from buffer by given range
-    private static BZip2CompressorInputStream mkbzi(ByteBuffer buf, long off, long len) throws IOException {
+    // Make block input stream from buffer by given range
+    static InputStream mkbzi(ByteBuffer buf, long off, long len, SectionCodec codec) throws IOException {
         int pos = buf.position();
-        //int limit = buf.limit();
+        int limit = buf.limit();
         buf.position((int) off);
-        //buf.limit((int) (off + len));
+        buf.limit((int) (off + len));
         ByteBuffer slice = buf.slice();
-        //buf.limit(limit);
+        buf.limit(limit);
         buf.position(pos);
         InputStream wrap = new WarppedByteBufferInputStream(slice);
-        return new BZip2CompressorInputStream(wrap, true);
+        return codec.decompress(wrap);
+    }
+
+    // A block of the patch read by positional reads
+    private static class SectionInputStream extends BufferedInputStream {
+        SectionInputStream(SeekableInput in, long off, long len) {
+            super(new InputStream() {
+                private long pos = off;
+                private final long end = off + len;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int o, int n) throws IOException {
+                    if (pos >= end) {
+                        return -1;
+                    }
+                    n = in.read(pos, b, o, (int) Math.min(n, end - pos));
+                    if (n > 0) {
+                        pos += n;
+                    }
+                    return n;
+                }
+            }, 8192);
+        }
     }
 
     // An InputStream that wrapped ByteBuffer
@@ -220,17 +577,7 @@ public class BSPatch {
 
         @Override
         public int read(byte[] b) throws IOException {
-            int remain = bf.remaining();
-            int lenb = b.length;
-            if (remain >= lenb) {
-                bf.get(b);
-                return b.length;
-            } else if (remain > 0) {
-                byte[] tmp = new byte[remain];
-                bf.get(tmp);
-                return remain;
-            }
-            return -1;
+            return read(b, 0, b.length);
         }
 
         @Override
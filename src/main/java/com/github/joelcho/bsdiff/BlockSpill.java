@@ -0,0 +1,139 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+
+/**
+ * Holds a compressed block until the blocks before it are written, or a block of a streamed patch
+ * until it is read.
+ * <p>
+ * The first {@value #THRESHOLD} bytes are kept in memory, the rest goes to a temp file
+ * of the allocator if it is a {@link TempFileSource}, like {@link FileBufferAllocator},
+ * or to one of {@link TempFileSource#DEFAULT} otherwise.
+ *
+ * @author Joel
+ */
+final class BlockSpill extends OutputStream {
+    static final int THRESHOLD = 1 << 20;
+
+    private final TempFileSource files;
+    private final ByteArrayOutputStream mem = new ByteArrayOutputStream();
+    private RandomAccessFile file;
+    private long size;
+
+    BlockSpill(BufferAllocator ba) {
+        this.files = ba instanceof TempFileSource ? (TempFileSource) ba : TempFileSource.DEFAULT;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (file == null && mem.size() + len <= THRESHOLD) {
+            mem.write(b, off, len);
+        } else {
+            if (file == null) {
+                file = files.createTempFile("bspill");
+            }
+            file.write(b, off, len);
+        }
+        size += len;
+    }
+
+    /**
+     * @return stream of all the bytes written, the block must not be written any more
+     * @throws IOException If some other I/O error occurs
+     */
+    InputStream inputStream() throws IOException {
+        InputStream head = new ByteArrayInputStream(mem.toByteArray());
+        if (file == null) {
+            return head;
+        }
+        return new SequenceInputStream(head, Channels.newInputStream(file.getChannel().position(0)));
+    }
+
+    /**
+     * Delete the temp file, the block must not be used any more.
+     */
+    void discard() {
+        if (file != null) {
+            try {
+                files.deleteTempFile(file);
+            } catch (IOException e) {
+                // the allocator deletes it on close, a default temp file is deleted already
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * @return true if the bytes after the first {@value #THRESHOLD} went to a temp file
+     */
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return count of bytes written
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Copy all the bytes written to out.
+     *
+     * @param out destination
+     * @throws IOException If some other I/O error occurs
+     */
+    void writeTo(OutputStream out) throws IOException {
+        mem.writeTo(out);
+        if (file != null) {
+            byte[] temp = new byte[10240];
+            int n;
+            file.seek(0);
+            while ((n = file.read(temp)) > 0) {
+                out.write(temp, 0, n);
+            }
+        }
+    }
+}
@@ -40,6 +40,8 @@ import java.nio.ByteBuffer;
  * @see ByteBuffer#allocate(int)
  * @see ByteBuffer#allocateDirect(int)
  * @see FileBufferAllocator#allocate(int)
+ * @see AdaptiveBufferAllocator
+ * @see PooledBufferAllocator
  */
 @FunctionalInterface
 public interface BufferAllocator {
@@ -57,4 +59,17 @@ public interface BufferAllocator {
      * @throws IOException              If some other I/O error occurs
      */
     ByteBuffer allocate(int size) throws IllegalArgumentException, IOException;
+
+    /**
+     * Gives back a buffer allocated by this allocator, the buffer and its views must not be used any more.
+     * <p>
+     * The default does nothing and leaves the buffer to the garbage collector.
+     *
+     * @param buffer the buffer returned by {@link #allocate(int)}
+     * @throws IOException If some other I/O error occurs
+     * @see BufferArena
+     * @see PooledBufferAllocator
+     */
+    default void release(ByteBuffer buffer) throws IOException {
+    }
 }
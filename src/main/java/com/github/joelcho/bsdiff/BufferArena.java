@@ -0,0 +1,106 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scope of buffers: everything allocated through the arena and not released yet
+ * is released to the parent allocator when the arena is closed.
+ *
+ * <pre>{@code
+ * try (BufferArena arena = new BufferArena(pool)) {
+ *     BSDiff.diff(old, new0, out, arena);
+ * }
+ * }</pre>
+ *
+ * @author Joel
+ */
+public class BufferArena implements BufferAllocator, Closeable {
+    private final BufferAllocator parent;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+
+    /**
+     * @param parent the allocator to allocate from and release to
+     */
+    public BufferArena(BufferAllocator parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) throws IllegalArgumentException, IOException {
+        ByteBuffer buffer = parent.allocate(size);
+        synchronized (buffers) {
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) throws IOException {
+        synchronized (buffers) {
+            for (int i = buffers.size() - 1; i >= 0; i--) {
+                if (buffers.get(i) == buffer) {
+                    buffers.remove(i);
+                    break;
+                }
+            }
+        }
+        parent.release(buffer);
+    }
+
+    /**
+     * Release all the buffers not released yet, newest first.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        IOException err = null;
+        synchronized (buffers) {
+            for (int i = buffers.size() - 1; i >= 0; i--) {
+                try {
+                    parent.release(buffers.get(i));
+                } catch (IOException e) {
+                    err = e;
+                }
+            }
+            buffers.clear();
+        }
+        if (err != null) {
+            throw err;
+        }
+    }
+}
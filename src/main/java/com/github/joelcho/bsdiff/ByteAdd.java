@@ -0,0 +1,136 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Adds old file bytes onto diff bytes, the inner loop of bspatch.
+ * <p>
+ * The part of the old range inside the old file is clipped once, bytes outside of it are left
+ * as they are. Heap buffers are added from their backing array, others are bulk copied into a
+ * scratch array first, so the add itself is always a plain array loop that the JIT unrolls and
+ * vectorizes.
+ *
+ * @author Joel
+ */
+final class ByteAdd {
+    private ByteAdd() {
+    }
+
+    /**
+     * <tt>dst[off, off + len) += src[srcOff, srcOff + len)</tt>
+     */
+    static void add(byte[] dst, int off, byte[] src, int srcOff, int len) {
+        for (int i = 0; i < len; i++) {
+            dst[off + i] += src[srcOff + i];
+        }
+    }
+
+    /**
+     * Add <tt>old[pos, pos + len)</tt> onto <tt>dst[off, off + len)</tt>.
+     *
+     * @param dst     diff bytes
+     * @param off     start of dst
+     * @param old     the old file, from 0 to its limit
+     * @param pos     position in old, may be negative or past the end
+     * @param len     number of bytes
+     * @param scratch copy buffer for buffers without an accessible array
+     */
+    static void add(byte[] dst, int off, ByteBuffer old, long pos, int len, byte[] scratch) {
+        final long from = Math.max(pos, 0), to = Math.min(pos + len, old.limit());
+        if (from >= to) {
+            return;
+        }
+        off += (int) (from - pos);
+        len = (int) (to - from);
+        if (old.hasArray()) {
+            add(dst, off, old.array(), old.arrayOffset() + (int) from, len);
+            return;
+        }
+        final ByteBuffer src = old.duplicate();
+        src.position((int) from);
+        while (len > 0) {
+            int n = Math.min(len, scratch.length);
+            src.get(scratch, 0, n);
+            add(dst, off, scratch, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Same as {@link #add(byte[], int, ByteBuffer, long, int, byte[])} for files bigger than 2 GB.
+     */
+    static void add(byte[] dst, int off, LargeByteBuffer old, long pos, int len, byte[] scratch) {
+        final long from = Math.max(pos, 0), to = Math.min(pos + len, old.size());
+        if (from >= to) {
+            return;
+        }
+        off += (int) (from - pos);
+        len = (int) (to - from);
+        for (long p = from; len > 0; ) {
+            int n = Math.min(len, scratch.length);
+            old.get(p, scratch, 0, n);
+            add(dst, off, scratch, 0, n);
+            p += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Same as {@link #add(byte[], int, ByteBuffer, long, int, byte[])} for the streaming patches.
+     *
+     * @param oldsize length of old, it is passed so that the input is not asked for it on every call
+     * @throws IOException If old is shorter than oldsize, or some other I/O error occurs
+     */
+    static void add(byte[] dst, int off, SeekableInput old, long oldsize, long pos, int len, byte[] scratch)
+            throws IOException {
+        final long from = Math.max(pos, 0), to = Math.min(pos + len, oldsize);
+        if (from >= to) {
+            return;
+        }
+        off += (int) (from - pos);
+        len = (int) (to - from);
+        for (long p = from; len > 0; ) {
+            int n = Math.min(len, scratch.length);
+            if (BSPatch.readFully(old, p, scratch, n) != n) {
+                throw new IOException("short read of old file");
+            }
+            add(dst, off, scratch, 0, n);
+            p += n;
+            off += n;
+            len -= n;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * How the patch blocks are bzip2ed.
+ *
+ * @author Joel
+ * @see PatchWriter
+ */
+final class Compression {
+    /**
+     * One bzip2 stream per block, compressed on the writing thread.
+     */
+    static final Compression SEQUENTIAL = new Compression(SectionCodec.BZIP2, false, null);
+
+    private final SectionCodec codec;
+    private final boolean pipelined;
+    private final ForkJoinPool pool;
+
+    private Compression(SectionCodec codec, boolean pipelined, ForkJoinPool pool) {
+        if (codec == null) {
+            throw new NullPointerException("codec");
+        }
+        this.codec = codec;
+        this.pipelined = pipelined;
+        this.pool = pool;
+    }
+
+    /**
+     * Each block is compressed on its own thread.
+     *
+     * @return pipelined compression with the same codec
+     * @see PipedCompressor
+     */
+    Compression pipelined() {
+        return new Compression(codec, true, null);
+    }
+
+    /**
+     * Each block is split into independent streams compressed on the pool.
+     *
+     * @param pool the pool to compress
+     * @return parallel compression with the same codec
+     * @see ParallelCompressor
+     */
+    Compression parallel(ForkJoinPool pool) {
+        return new Compression(codec, false, pool);
+    }
+
+    /**
+     * @param codec the block codec
+     * @return the same compression with another codec
+     */
+    Compression withCodec(SectionCodec codec) {
+        return new Compression(codec, pipelined, pool);
+    }
+
+    SectionCodec getCodec() {
+        return codec;
+    }
+
+    OutputStream open(OutputStream dest, String name) throws IOException {
+        if (pool != null) {
+            return new ParallelCompressor(dest, pool, codec);
+        } else if (pipelined) {
+            return new PipedCompressor(dest, "bsdiff-" + name, codec);
+        }
+        return codec.compress(new Unclosable(dest));
+    }
+
+    static void finish(OutputStream compressor) throws IOException {
+        if (compressor instanceof ParallelCompressor) {
+            ((ParallelCompressor) compressor).finish();
+        } else if (compressor instanceof PipedCompressor) {
+            ((PipedCompressor) compressor).finish();
+        } else {
+            compressor.close();
+        }
+    }
+
+    static void abort(OutputStream compressor) {
+        if (compressor instanceof ParallelCompressor) {
+            ((ParallelCompressor) compressor).abort();
+        } else if (compressor instanceof PipedCompressor) {
+            ((PipedCompressor) compressor).abort();
+        }
+    }
+
+    // Keeps the destination open when a codec stream is closed
+    static final class Unclosable extends FilterOutputStream {
+        Unclosable(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
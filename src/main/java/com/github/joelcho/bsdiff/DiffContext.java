@@ -0,0 +1,345 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An old file prepared for diffing: the old buffer and its suffix array.
+ * <p>
+ * Until closed it is immutable and safe for concurrent use, many threads can call {@link #diff} at the same time
+ * and share one suffix array. Every call works on its own views of the buffers and has its own scan state
+ * and temp buffers. The content of old file must not be modified while the context is in use.
+ * <p>
+ * The contexts made by the <tt>with</tt> methods share the memory of this one: the suffix array it sorted,
+ * the LCP arrays and the packed suffix array. Closing any of them releases it for all of them,
+ * so close one when all their diffs are done.
+ *
+ * <pre>{@code
+ * try (DiffContext ctx = new DiffContext(old, sort).withLcp(ba).withCompactSuffixArray(ba)) {
+ *     ctx.diff(new0, out);
+ * }
+ * }</pre>
+ *
+ * @author Joel
+ */
+public final class DiffContext implements Closeable {
+    private final ByteBuffer old;
+    private final SuffixArray I;
+    private final LcpIndex lcp;
+    private final Compression compression;
+    private final AnchorTable anchors;
+    private final Memory memory;
+
+    /**
+     * Sort the old file.
+     *
+     * @param old      old file
+     * @param qSufSort the QSufSort implementation
+     * @throws IOException If some other I/O error occurs
+     */
+    public DiffContext(ByteBuffer old, QSufSort qSufSort) throws IOException {
+        this.old = old.duplicate();
+        final IntBuffer sorted = qSufSort.sort(this.old, this.old.limit());
+        this.I = SuffixArray.of(sorted);
+        this.lcp = null;
+        this.compression = Compression.SEQUENTIAL;
+        this.anchors = null;
+        this.memory = new Memory(() -> qSufSort.release(sorted));
+    }
+
+    /**
+     * Use a prebuilt index of the old file, the suffix array stays owned by the index.
+     *
+     * @param old   old file
+     * @param index the index built from old file
+     */
+    public DiffContext(ByteBuffer old, SuffixArrayIndex index) {
+        if (index.getOldSize() != old.limit()) {
+            throw new IllegalArgumentException("index is not built from old file");
+        }
+        this.old = old.duplicate();
+        this.I = SuffixArray.of(index.getSuffixArray());
+        this.lcp = null;
+        this.compression = Compression.SEQUENTIAL;
+        this.anchors = null;
+        this.memory = new Memory(null);
+    }
+
+    private DiffContext(ByteBuffer old, SuffixArray I, LcpIndex lcp, Compression compression, AnchorTable anchors,
+                        Memory memory) {
+        this.old = old;
+        this.I = I;
+        this.lcp = lcp;
+        this.compression = compression;
+        this.anchors = anchors;
+        this.memory = memory;
+    }
+
+    /**
+     * Build the LCP arrays of the suffix array, suffix array searches then skip most of the byte comparisons.
+     * <p>
+     * It takes <tt>8 * (n + 1)</tt> more bytes and O(n) time, it pays off on repetitive data and when
+     * the context is used by many diffs. The patches are identical with or without it.
+     *
+     * @param ba LCP arrays allocator, they are released to it when the context is closed
+     * @return a context with the same old file and suffix array, and the LCP arrays
+     * @throws IOException If some other I/O error occurs
+     */
+    public DiffContext withLcp(BufferAllocator ba) throws IOException {
+        memory.check();
+        if (lcp != null) {
+            return this;
+        }
+        final LcpIndex built = LcpIndex.build(old.duplicate(), I, ba);
+        memory.add(() -> built.release(ba));
+        return new DiffContext(old, I, built, compression, anchors, memory);
+    }
+
+    /**
+     * Pack the suffix array to <tt>ceil(log2(n + 1))</tt> bits per entry, for contexts kept in memory for many diffs.
+     * <p>
+     * It saves <tt>1 - bits / 32</tt> of the suffix array, 34% for a 1 MB old file and 16% for a 100 MB one.
+     * Searches of big files run at about the same speed, cache misses cost more than the unpacking,
+     * small files that fit in cache are scanned up to twice as slow. The patches are identical with or without it.
+     * <p>
+     * The new context takes over the memory of this one, and the suffix array sorted by this one is released
+     * once packed. This context and the others sharing its memory are closed, only the new one can be used.
+     *
+     * @param ba packed suffix array allocator, it is released to it when the context is closed
+     * @return a context with the same old file, LCP arrays and compression, and the packed suffix array
+     * @throws IOException If some other I/O error occurs
+     */
+    public DiffContext withCompactSuffixArray(BufferAllocator ba) throws IOException {
+        memory.check();
+        if (I instanceof PackedSuffixArray) {
+            return this;
+        }
+        final PackedSuffixArray packed = PackedSuffixArray.pack(I, old.limit(), ba);
+        return new DiffContext(old, packed, lcp, compression, anchors, memory.pack(() -> packed.release(ba)));
+    }
+
+    /**
+     * Find long identical runs by rolling hash anchors before the scan, only the gaps between them are searched
+     * in the suffix array. It is much faster when new file is mostly unchanged.
+     * <p>
+     * The anchors take up to 192 MB and O(n) time to build, once per context. Parallel diffs do not use them.
+     *
+     * @return a context with the same old file, suffix array, LCP arrays and compression, and the anchors
+     */
+    public DiffContext withAnchorPrematch() {
+        memory.check();
+        if (anchors != null) {
+            return this;
+        }
+        return new DiffContext(old, I, lcp, compression, AnchorTable.build(LargeByteBuffer.wrap(old)), memory);
+    }
+
+    /**
+     * Compress the ctrl, diff and extra blocks while scanning, each on its own thread.
+     * <p>
+     * Every diff then uses three more threads, bzip2 is no longer serialized after the scan.
+     * The patches are identical with or without it.
+     *
+     * @return a context with the same old file, suffix array and LCP arrays, and pipelined compression
+     */
+    public DiffContext withPipelinedCompression() {
+        memory.check();
+        return new DiffContext(old, I, lcp, compression.pipelined(), anchors, memory);
+    }
+
+    /**
+     * Split the ctrl, diff and extra blocks into 900 KB pieces, each is compressed as an independent stream
+     * on the pool and the streams are concatenated in order, like pbzip2.
+     * <p>
+     * {@link BSPatch} reads such patches, but the original bspatch 4.3 does not, it stops at the end of
+     * the first stream of each block. Patches are identical to the sequential ones when every block
+     * is shorter than 900 KB.
+     *
+     * @param pool the pool to compress
+     * @return a context with the same old file, suffix array and LCP arrays, and parallel compression
+     */
+    public DiffContext withParallelCompression(ForkJoinPool pool) {
+        memory.check();
+        return new DiffContext(old, I, lcp, compression.parallel(pool), anchors, memory);
+    }
+
+    /**
+     * Compress the blocks with another codec, patches of codecs other than {@link SectionCodec#BZIP2}
+     * can only be applied by {@link BSPatch}.
+     *
+     * @param codec the block codec
+     * @return a context with the same old file, suffix array, LCP arrays and compression mode, and the codec
+     */
+    public DiffContext withCodec(SectionCodec codec) {
+        memory.check();
+        return new DiffContext(old, I, lcp, compression.withCodec(codec), anchors, memory);
+    }
+
+    /**
+     * @return the length of old file
+     */
+    public int getOldSize() {
+        return old.limit();
+    }
+
+    /**
+     * Diff with temp buffers on JVM heap.
+     *
+     * @param new0 new file
+     * @param out  diff output
+     * @throws IOException If some other I/O error occurs
+     * @see #diff(ByteBuffer, SeekableOutputStream, BufferAllocator)
+     */
+    public void diff(ByteBuffer new0, SeekableOutputStream out) throws IOException {
+        diff(new0, out, ByteBuffer::allocate);
+    }
+
+    /**
+     * Same as {@link BSDiff#diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator, QSufSort)}
+     * without the sort phase.
+     *
+     * @param new0 new file
+     * @param out  diff output
+     * @param ba   temp buffer creator, it must be thread-safe if it is shared by concurrent diffs
+     * @throws IOException If some other I/O error occurs
+     */
+    public void diff(ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba) throws IOException {
+        memory.check();
+        BSDiff.diff(old.duplicate(), new0.duplicate(), out, ba, I, lcp, compression, anchors);
+    }
+
+    /**
+     * Diff with a parallel scan phase: the new file is split into ranges that are scanned on the pool.
+     * <p>
+     * The patch is still a valid BSDIFF40 patch, but it is not identical to the sequential one.
+     * Matches cannot cross range boundaries, the patch gets slightly bigger as ranges get smaller.
+     * With ranges of a few MB the cost is usually less than 1% of the patch size.
+     *
+     * @param new0   new file
+     * @param out    diff output
+     * @param ba     temp buffer creator, it must be thread-safe if it is shared by concurrent diffs
+     * @param pool   the pool to scan ranges
+     * @param ranges maximal count of ranges, usually a small multiple of the pool parallelism
+     * @throws IOException If some other I/O error occurs
+     */
+    public void diff(ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba, ForkJoinPool pool, int ranges) throws IOException {
+        memory.check();
+        BSDiff.diff(old.duplicate(), new0.duplicate(), out, ba, I, lcp, pool, ranges, compression);
+    }
+
+    /**
+     * Release the suffix array sorted by the context, its LCP arrays and packed suffix array, for this context
+     * and all the others sharing its memory. Diffs must not run on them any more. Closing again does nothing.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        memory.close();
+    }
+
+    // The memory shared by the contexts made from one another, each release is a Closeable
+    private static final class Memory implements Closeable {
+        // releases the unpacked suffix array, null if it is not owned
+        private Closeable suffixArray;
+        private final List<Closeable> others = new ArrayList<>();
+        private boolean closed;
+
+        Memory(Closeable suffixArray) {
+            this.suffixArray = suffixArray;
+        }
+
+        synchronized void check() {
+            if (closed) {
+                throw new IllegalStateException("context closed");
+            }
+        }
+
+        synchronized void add(Closeable release) throws IOException {
+            if (closed) {
+                // closed by another thread since the check
+                release.close();
+                check();
+            }
+            others.add(release);
+        }
+
+        // moves everything but the unpacked suffix array to a new memory, with the packed one, and closes this one
+        synchronized Memory pack(Closeable packed) throws IOException {
+            Memory moved = new Memory(null);
+            moved.others.addAll(others);
+            moved.others.add(packed);
+            others.clear();
+            try {
+                close();
+            } catch (IOException e) {
+                try {
+                    moved.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            return moved;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            IOException err = null;
+            for (int i = others.size() - 1; i >= -1; i--) {
+                Closeable release = i >= 0 ? others.get(i) : suffixArray;
+                try {
+                    if (release != null) {
+                        release.close();
+                    }
+                } catch (IOException e) {
+                    err = e;
+                }
+            }
+            others.clear();
+            suffixArray = null;
+            if (err != null) {
+                throw err;
+            }
+        }
+    }
+}
@@ -35,18 +35,41 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * BufferAllocator based on file
+ * <p>
+ * All the buffers are mapped from one sparse temp file, a slab of whole pages each.
+ * Released slabs are unmapped at once, merged with the free slabs next to them and reused by later
+ * allocations, free slabs at the end of the file are truncated away. Closing unmaps the buffers still in use, and deletes the file
+ * and the temp files of {@link #createTempFile(String)}, none of them may be used afterwards.
+ * <p>
+ * The allocator is thread safe.
  *
  * @author Joel
  */
-public class FileBufferAllocator implements BufferAllocator, Closeable {
+public class FileBufferAllocator implements BufferAllocator, TempFileSource, Closeable {
+    private static final int PAGE_SIZE = 4096;
+
     private final File tempDir;
     private final Map<File, RandomAccessFile> files = new HashMap<>();
+    // free slabs, offset to length, no two of them are adjacent and none ends at slabEnd
+    private final TreeMap<Long, Long> free = new TreeMap<>();
+    // the same free slabs, length to offsets
+    private final TreeMap<Long, TreeSet<Long>> freeBySize = new TreeMap<>();
+    // buffers in use, buffer to {offset, length} of its slab
+    private final Map<ByteBuffer, long[]> mapped = new IdentityHashMap<>();
+    private File slabFile;
+    private RandomAccessFile slab;
+    private long slabEnd;
+    private boolean closed;
 
     public FileBufferAllocator() throws IOException {
         this(System.getProperty("java.io.tmpdir"));
@@ -62,33 +85,181 @@ public class FileBufferAllocator implements BufferAllocator, Closeable {
         this.tempDir = file;
     }
 
-    public ByteBuffer allocate(String prefix, int size) throws IllegalArgumentException, IOException {
+    /**
+     * @param prefix name prefix of the slab file, if it is not created yet
+     * @param size   buffer size
+     * @return a zeroed buffer mapped from the slab file
+     * @throws IllegalArgumentException If the size is not positive
+     * @throws IOException              If some other I/O error occurs
+     */
+    public synchronized ByteBuffer allocate(String prefix, int size) throws IllegalArgumentException, IOException {
         if (size <= 0) {
             throw new IllegalArgumentException("invalid buffer size " + size);
         }
+        if (closed) {
+            throw new IOException("allocator closed");
+        }
+        if (slab == null) {
+            openSlab(prefix);
+        }
+        final long length = ((long) size + PAGE_SIZE - 1) & -PAGE_SIZE;
+        long offset = take(length);
+        final boolean reused = offset >= 0;
+        MappedByteBuffer buffer;
+        try {
+            if (!reused) {
+                offset = slabEnd;
+                slab.setLength(offset + length);
+                slabEnd = offset + length;
+            }
+            buffer = slab.getChannel().map(FileChannel.MapMode.READ_WRITE, offset, size);
+        } catch (IOException e) {
+            if (reused || offset + length == slabEnd) {
+                try {
+                    give(offset, length);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new IOException("create buffer failed", e);
+        }
+        if (reused) {
+            int i = 0;
+            for (; i + Long.BYTES <= size; i += Long.BYTES) {
+                buffer.putLong(i, 0L);
+            }
+            for (; i < size; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        mapped.put(buffer, new long[]{offset, length});
+        return buffer;
+    }
+
+    private void openSlab(String prefix) throws IOException {
         final File tempFile = File.createTempFile(prefix, null, tempDir);
-        RandomAccessFile raf = null;
-        ByteBuffer buffer = null;
-        Exception err = null;
         try {
-            raf = new RandomAccessFile(tempFile, "rw");
-            FileChannel channel = raf.getChannel();
-            channel.truncate(size);
-            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
-        } catch (Exception e) {
-            err = e;
+            slab = new RandomAccessFile(tempFile, "rw");
+        } catch (IOException e) {
+            final boolean delete = tempFile.delete();
+            assert delete;
+            throw e;
         }
+        slabFile = tempFile;
+        slabEnd = 0;
+    }
 
-        if (err != null) {
-            if (raf != null) {
-                raf.close();
-            }
+    // Offset of a free slab of at least length bytes, the rest of it stays free, or -1
+    private long take(long length) {
+        Map.Entry<Long, TreeSet<Long>> entry = freeBySize.ceilingEntry(length);
+        if (entry == null) {
+            return -1;
+        }
+        final long offset = entry.getValue().first();
+        final long size = entry.getKey();
+        removeFree(offset, size);
+        if (size > length) {
+            addFree(offset + length, size - length);
+        }
+        return offset;
+    }
+
+    // Free a slab, merged with the free slabs before and after it, then truncate the free end of the file
+    private void give(long offset, long length) throws IOException {
+        Map.Entry<Long, Long> before = free.lowerEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            removeFree(before.getKey(), before.getValue());
+            offset = before.getKey();
+            length += before.getValue();
+        }
+        Long after = free.get(offset + length);
+        if (after != null) {
+            removeFree(offset + length, after);
+            length += after;
+        }
+        addFree(offset, length);
+        for (Map.Entry<Long, Long> last; (last = free.lastEntry()) != null
+                && last.getKey() + last.getValue() == slabEnd; ) {
+            removeFree(last.getKey(), last.getValue());
+            slabEnd = last.getKey();
+            slab.setLength(slabEnd);
+        }
+    }
+
+    private void addFree(long offset, long length) {
+        free.put(offset, length);
+        freeBySize.computeIfAbsent(length, k -> new TreeSet<>()).add(offset);
+    }
+
+    private void removeFree(long offset, long length) {
+        free.remove(offset);
+        TreeSet<Long> offsets = freeBySize.get(length);
+        offsets.remove(offset);
+        if (offsets.isEmpty()) {
+            freeBySize.remove(length);
+        }
+    }
+
+    /**
+     * Unmap the buffer and free its slab for later allocations.
+     *
+     * @param buffer the buffer returned by {@link #allocate(int)}
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public synchronized void release(ByteBuffer buffer) throws IOException {
+        long[] region = mapped.remove(buffer);
+        if (region == null) {
+            return;
+        }
+        Unmapper.unmap(buffer);
+        give(region[0], region[1]);
+    }
+
+    // Length of the slab file, the slabs in use and the free ones between them
+    synchronized long getSlabSize() {
+        return slabEnd;
+    }
+
+    /**
+     * Create an empty temp file, it is closed and deleted with this allocator.
+     *
+     * @param prefix temp file name prefix
+     * @return the temp file opened for read and write
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public synchronized RandomAccessFile createTempFile(String prefix) throws IOException {
+        if (closed) {
+            throw new IOException("allocator closed");
+        }
+        final File tempFile = File.createTempFile(prefix, null, tempDir);
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(tempFile, "rw");
+        } catch (IOException e) {
             final boolean delete = tempFile.delete();
             assert delete;
-            throw new IOException("create buffer failed", err);
+            throw e;
         }
         this.files.put(tempFile, raf);
-        return buffer;
+        return raf;
+    }
+
+    @Override
+    public synchronized void deleteTempFile(RandomAccessFile file) throws IOException {
+        for (Map.Entry<File, RandomAccessFile> entry : files.entrySet()) {
+            if (entry.getValue() == file) {
+                files.remove(entry.getKey());
+                try {
+                    file.close();
+                } finally {
+                    final boolean delete = entry.getKey().delete();
+                    assert delete;
+                }
+                return;
+            }
+        }
     }
 
     @Override
@@ -97,8 +268,26 @@ public class FileBufferAllocator implements BufferAllocator, Closeable {
     }
 
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         IOException err = null;
+        closed = true;
+        for (ByteBuffer buffer : mapped.keySet()) {
+            Unmapper.unmap(buffer);
+        }
+        mapped.clear();
+        free.clear();
+        freeBySize.clear();
+        if (slab != null) {
+            try {
+                slab.close();
+            } catch (IOException e) {
+                err = e;
+            }
+            final boolean delete = slabFile.delete();
+            assert delete;
+            slab = null;
+            slabFile = null;
+        }
         for (Map.Entry<File, RandomAccessFile> entry : files.entrySet()) {
             try {
                 entry.getValue().close();
@@ -108,6 +297,7 @@ public class FileBufferAllocator implements BufferAllocator, Closeable {
             final boolean delete = entry.getKey().delete();
             assert delete;
         }
+        files.clear();
         if (err != null) {
             throw err;
         }
@@ -0,0 +1,357 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * The long indexed path of {@link BSDiff}, for files bigger than 2 GB.
+ * <p>
+ * The suffix array is a {@link LargeLongArray}, sorted with qsufsort, which takes <tt>16 * (n + 1)</tt> bytes
+ * of allocated memory while sorting. The scan and search here are the ones of both paths, the int path reads
+ * its buffers through {@link LargeByteBuffer#wrap(java.nio.ByteBuffer)}, and the tuples go to the same {@link PatchWriter}.
+ *
+ * @author Joel
+ */
+final class LargeBSDiff {
+    private LargeBSDiff() {
+    }
+
+    static void diff(LargeByteBuffer old, LargeByteBuffer new0, SeekableOutputStream out, BufferAllocator ba,
+                     Compression compression) throws IOException {
+        final long oldsize = old.size();
+        LargeLongArray I = new LargeLongArray(ba, oldsize + 1);
+        try {
+            LargeLongArray V = new LargeLongArray(ba, oldsize + 1);
+            try {
+                qsufsort(I, V, old, oldsize);
+            } finally {
+                V.release(ba);
+            }
+
+            PatchWriter writer = new PatchWriter(old, new0, out, ba, compression);
+            try {
+                scan(old, I::get, null, new0, 0, new0.size(), 0, BSDiff.END, writer);
+                writer.finish();
+            } finally {
+                writer.abort();
+            }
+        } finally {
+            I.release(ba);
+        }
+    }
+
+    static void qsufsort(LargeLongArray I, LargeLongArray V, LargeByteBuffer old, long oldsize) {
+        long[] buckets = new long[256];
+        long i, h, len;
+        for (i = 0; i < oldsize; i++) buckets[Byte.toUnsignedInt(old.get(i))]++;
+        for (int b = 1; b < 256; b++) buckets[b] += buckets[b - 1];
+        for (int b = 255; b > 0; b--) buckets[b] = buckets[b - 1];
+        buckets[0] = 0;
+
+        for (i = 0; i < oldsize; i++) I.put(++buckets[Byte.toUnsignedInt(old.get(i))], i);
+        I.put(0, oldsize);
+        for (i = 0; i < oldsize; i++) V.put(i, buckets[Byte.toUnsignedInt(old.get(i))]);
+        V.put(oldsize, 0);
+        for (int b = 1; b < 256; b++) if (buckets[b] == buckets[b - 1] + 1) I.put(buckets[b], -1);
+        I.put(0, -1);
+
+        for (h = 1; I.get(0) != -(oldsize + 1); h += h) {
+            len = 0;
+            for (i = 0; i < oldsize + 1; ) {
+                if (I.get(i) < 0) {
+                    len -= I.get(i);
+                    i -= I.get(i);
+                } else {
+                    if (len != 0) I.put(i - len, -len);
+                    len = V.get(I.get(i)) + 1 - i;
+                    split(I, V, i, len, h);
+                    i += len;
+                    len = 0;
+                }
+            }
+            if (len != 0) I.put(i - len, -len);
+        }
+        for (i = 0; i < oldsize + 1; i++) I.put(V.get(i), i);
+    }
+
+    private static void split(LargeLongArray I, LargeLongArray V, long start, long len, long h) {
+        long i, j, k, x, tmp, jj, kk;
+
+        if (len < 16) {
+            for (k = start; k < start + len; k += j) {
+                j = 1;
+                x = V.get(I.get(k) + h);
+                for (i = 1; k + i < start + len; i++) {
+                    long y = V.get(I.get(k + i) + h);
+                    if (y < x) {
+                        x = y;
+                        j = 0;
+                    }
+                    if (y == x) {
+                        tmp = I.get(k + j);
+                        I.put(k + j, I.get(k + i));
+                        I.put(k + i, tmp);
+                        j++;
+                    }
+                }
+                for (i = 0; i < j; i++) V.put(I.get(k + i), k + j - 1);
+                if (j == 1) I.put(k, -1);
+            }
+            return;
+        }
+        x = V.get(I.get(start + len / 2) + h);
+        jj = 0;
+        kk = 0;
+        for (i = start; i < start + len; i++) {
+            long y = V.get(I.get(i) + h);
+            if (y < x) jj++;
+            if (y == x) kk++;
+        }
+        jj += start;
+        kk += jj;
+
+        i = start;
+        j = 0;
+        k = 0;
+        while (i < jj) {
+            long y = V.get(I.get(i) + h);
+            if (y < x) {
+                i++;
+            } else if (y == x) {
+                tmp = I.get(i);
+                I.put(i, I.get(jj + j));
+                I.put(jj + j, tmp);
+                j++;
+            } else {
+                tmp = I.get(i);
+                I.put(i, I.get(kk + k));
+                I.put(kk + k, tmp);
+                k++;
+            }
+        }
+
+        while (jj + j < kk) {
+            if (V.get(I.get(jj + j) + h) == x) {
+                j++;
+            } else {
+                tmp = I.get(jj + j);
+                I.put(jj + j, I.get(kk + k));
+                I.put(kk + k, tmp);
+                k++;
+            }
+        }
+
+        if (jj > start) split(I, V, start, jj - start, h);
+
+        for (i = 0; i < kk - jj; i++) V.put(I.get(jj + i), kk - 1);
+        if (jj == kk - 1) I.put(jj, -1);
+
+        if (start + len > kk) split(I, V, kk, start + len - kk, h);
+    }
+
+    /**
+     * Scan new[lo, hi) and emit the control tuples, the scan of both the int and the long path.
+     *
+     * @param old     old file
+     * @param I       suffix array of old file
+     * @param lcp     LCP of the suffix array, may be null
+     * @param new0    new file
+     * @param lo      start of range
+     * @param hi      end of range
+     * @param lastpos old position of the range start
+     * @param nextpos old position of the next range start, or {@link BSDiff#END} if no more range
+     * @param sink    control tuples receiver
+     * @throws IOException If some other I/O error occurs
+     */
+    static void scan(LargeByteBuffer old, LongUnaryOperator I, LcpIndex lcp, LargeByteBuffer new0,
+                     long lo, long hi, long lastpos, long nextpos, ControlSink sink) throws IOException {
+        final long oldsize = old.size();
+
+        long scan = lo, len = 0;
+        long lastscan = lo, lastoffset = lastpos - lo;
+        long oldscore, scsc;
+        long s, Sf, lenf, Sb, lenb;
+        long overlap, Ss, lens;
+        long i;
+
+        long[] pos = new long[1];
+        while (scan < hi) {
+            oldscore = 0;
+
+            for (scsc = scan += len; scan < hi; scan++) {
+                len = search(I, lcp, old, oldsize, new0, scan, hi - scan, pos);
+
+                for (; scsc < scan + len; scsc++)
+                    if ((scsc + lastoffset < oldsize) &&
+                            (old.get(scsc + lastoffset) == new0.get(scsc)))
+                        oldscore++;
+
+                if (((len == oldscore) && (len != 0)) ||
+                        (len > oldscore + 8)) break;
+
+                if ((scan + lastoffset < oldsize) &&
+                        (old.get(scan + lastoffset) == new0.get(scan)))
+                    oldscore--;
+            }
+
+            if ((len != oldscore) || (scan == hi)) {
+                s = 0;
+                Sf = 0;
+                lenf = 0;
+                for (i = 0; (lastscan + i < scan) && (lastpos + i < oldsize); ) {
+                    if (old.get(lastpos + i) == new0.get(lastscan + i)) s++;
+                    i++;
+                    if (s * 2 - i > Sf * 2 - lenf) {
+                        Sf = s;
+                        lenf = i;
+                    }
+                }
+
+                lenb = 0;
+                if (scan < hi) {
+                    s = 0;
+                    Sb = 0;
+                    for (i = 1; (scan >= lastscan + i) && (pos[0] >= i); i++) {
+                        if (old.get(pos[0] - i) == new0.get(scan - i)) s++;
+                        if (s * 2 - i > Sb * 2 - lenb) {
+                            Sb = s;
+                            lenb = i;
+                        }
+                    }
+                }
+
+                if (lastscan + lenf > scan - lenb) {
+                    overlap = (lastscan + lenf) - (scan - lenb);
+                    s = 0;
+                    Ss = 0;
+                    lens = 0;
+                    for (i = 0; i < overlap; i++) {
+                        if (new0.get(lastscan + lenf - overlap + i) ==
+                                old.get(lastpos + lenf - overlap + i)) s++;
+                        if (new0.get(scan - lenb + i) ==
+                                old.get(pos[0] - lenb + i)) s--;
+                        if (s > Ss) {
+                            Ss = s;
+                            lens = i + 1;
+                        }
+                    }
+
+                    lenf += lens - overlap;
+                    lenb -= lens;
+                }
+
+                // the last tuple of a range seeks to the start of next range
+                long seek = (pos[0] - lenb) - (lastpos + lenf);
+                if (scan == hi && nextpos != BSDiff.END) {
+                    seek = nextpos - (lastpos + lenf);
+                }
+                sink.accept(lastscan, lastpos, lenf, (scan - lenb) - (lastscan + lenf), seek);
+
+                lastscan = scan - lenb;
+                lastpos = pos[0] - lenb;
+                lastoffset = pos[0] - scan;
+            }
+        }
+    }
+
+    /**
+     * Find the longest match of new[newpos, newpos + newsize) in old.
+     * <p>
+     * The binary search keeps the common prefix lengths of new with the suffixes at both ends,
+     * every suffix between them shares at least the smaller one, so comparison starts from there.
+     * With {@link LcpIndex} the bigger one is known in advance (Manber and Myers), most probes then
+     * compare only a few bytes.
+     */
+    static long search(LongUnaryOperator I, LcpIndex lcp, LargeByteBuffer old, long oldsize,
+                       LargeByteBuffer new0, long newpos, long newsize, long[] pos) {
+        long st = 0, en = oldsize;
+        long lcpst = 0, lcpen = 0;
+        long x, k, xpos, len;
+        while (en - st >= 2) {
+            x = st + (en - st) / 2;
+            if (lcp == null) {
+                k = Math.min(lcpst, lcpen);
+            } else if (lcpst >= lcpen) {
+                // compare suffix x with new through the suffix at st
+                k = lcp.left((int) x);
+                if (k > lcpst) {
+                    st = x;
+                    continue;
+                } else if (k < lcpst) {
+                    en = x;
+                    lcpen = k;
+                    continue;
+                }
+            } else {
+                // compare suffix x with new through the suffix at en
+                k = lcp.right((int) x);
+                if (k > lcpen) {
+                    en = x;
+                    continue;
+                } else if (k < lcpen) {
+                    if (oldsize - I.applyAsLong(x) == k) {
+                        en = x;
+                        lcpen = k;
+                    } else {
+                        st = x;
+                        lcpst = k;
+                    }
+                    continue;
+                }
+            }
+
+            xpos = I.applyAsLong(x);
+            len = Math.min(oldsize - xpos, newsize);
+            k = old.mismatch(xpos, new0, newpos, k, len);
+            if (k < len && Byte.toUnsignedInt(old.get(xpos + k)) < Byte.toUnsignedInt(new0.get(newpos + k))) {
+                st = x;
+                lcpst = k;
+            } else {
+                en = x;
+                lcpen = k;
+            }
+        }
+
+        xpos = I.applyAsLong(st);
+        x = old.mismatch(xpos, new0, newpos, lcpst, Math.min(oldsize - xpos, newsize));
+        long ypos = I.applyAsLong(en);
+        long y = old.mismatch(ypos, new0, newpos, lcpen, Math.min(oldsize - ypos, newsize));
+        if (x > y) {
+            pos[0] = xpos;
+            return x;
+        } else {
+            pos[0] = ypos;
+            return y;
+        }
+    }
+}
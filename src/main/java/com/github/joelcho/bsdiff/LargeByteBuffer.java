@@ -0,0 +1,251 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A long-indexed byte buffer made of {@value #SEGMENT_SIZE} bytes segments, for files bigger than 2 GB.
+ * <p>
+ * The segments are usually mapped regions of one file, see {@link #map(FileChannel, FileChannel.MapMode, long, long)}.
+ *
+ * @author Joel
+ * @see BSDiff#diff(LargeByteBuffer, LargeByteBuffer, SeekableOutputStream, BufferAllocator)
+ * @see BSPatch#patch(LargeByteBuffer, LargeByteBuffer, LargeByteBuffer)
+ */
+public final class LargeByteBuffer {
+    static final int SEGMENT_SHIFT = 30;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final ByteBuffer[] segments;
+    private final long size;
+    // the whole content in one buffer, the wrapped one or the only segment, null if there is none
+    private final ByteBuffer whole;
+
+    private LargeByteBuffer(ByteBuffer[] segments, long size) {
+        this(segments, size, segments.length == 1 ? segments[0] : null);
+    }
+
+    private LargeByteBuffer(ByteBuffer[] segments, long size, ByteBuffer whole) {
+        this.segments = segments;
+        this.size = size;
+        this.whole = whole;
+    }
+
+    /**
+     * Map a region of the file.
+     *
+     * @param channel file channel
+     * @param mode    map mode
+     * @param offset  region start
+     * @param size    region length
+     * @return the mapped buffer
+     * @throws IOException If some other I/O error occurs
+     */
+    public static LargeByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(size)];
+        for (int k = 0; k < segments.length; k++) {
+            long start = (long) k << SEGMENT_SHIFT;
+            segments[k] = channel.map(mode, offset + start, Math.min(SEGMENT_SIZE, size - start));
+        }
+        return new LargeByteBuffer(segments, size);
+    }
+
+    /**
+     * Allocate segments by the allocator.
+     *
+     * @param ba   segment allocator
+     * @param size buffer length
+     * @return the buffer
+     * @throws IOException If some other I/O error occurs
+     */
+    public static LargeByteBuffer allocate(BufferAllocator ba, long size) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(size)];
+        for (int k = 0; k < segments.length; k++) {
+            segments[k] = ba.allocate((int) Math.min(SEGMENT_SIZE, size - ((long) k << SEGMENT_SHIFT)));
+        }
+        return new LargeByteBuffer(segments, size);
+    }
+
+    /**
+     * @param buffer the buffer, from 0 to its limit
+     * @return a buffer sharing the content, cut into segments
+     */
+    public static LargeByteBuffer wrap(ByteBuffer buffer) {
+        final int size = buffer.limit();
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(size)];
+        for (int k = 0; k < segments.length; k++) {
+            int start = k << SEGMENT_SHIFT;
+            ByteBuffer b = buffer.duplicate();
+            b.limit(start + Math.min(SEGMENT_SIZE, size - start));
+            b.position(start);
+            segments[k] = b.slice();
+        }
+        return new LargeByteBuffer(segments, size, buffer.duplicate());
+    }
+
+    private static int segmentCount(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("invalid buffer size " + size);
+        }
+        return (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * @return buffer length
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the buffer is one {@link ByteBuffer}, the int indexed path can be used
+     */
+    boolean isSmall() {
+        return (segments.length == 0 || whole != null) && size < Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the only segment or the wrapped buffer, see {@link #isSmall()}
+     */
+    ByteBuffer asByteBuffer() {
+        if (segments.length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteBuffer b = whole.duplicate();
+        b.limit((int) size);
+        b.position(0);
+        return b;
+    }
+
+    byte get(long i) {
+        if (whole != null) {
+            // one buffer holds it all, the scan reads through here
+            return whole.get((int) i);
+        }
+        return segments[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+    }
+
+    void put(long i, byte b) {
+        segments[(int) (i >>> SEGMENT_SHIFT)].put((int) (i & SEGMENT_MASK), b);
+    }
+
+    /**
+     * Compare with b segment by segment through {@link Mismatch}.
+     *
+     * @param apos start of this buffer
+     * @param b    buffer b
+     * @param bpos start of b
+     * @param from the first from bytes are known equal
+     * @param len  compare at most len bytes
+     * @return the first i in [from, len) that <tt>this[apos + i] != b[bpos + i]</tt>, or len if there is none
+     */
+    long mismatch(long apos, LargeByteBuffer b, long bpos, long from, long len) {
+        if (whole != null && b.whole != null) {
+            return Mismatch.mismatch(whole, (int) apos, b.whole, (int) bpos, (int) from, (int) len);
+        }
+        return mismatchSegments(apos, b, bpos, from, len);
+    }
+
+    // Kept out of mismatch, so that the one segment case is small enough to be inlined into the search
+    private long mismatchSegments(long apos, LargeByteBuffer b, long bpos, long from, long len) {
+        long i = from;
+        while (i < len) {
+            long x = apos + i, y = bpos + i;
+            ByteBuffer s = segments[(int) (x >>> SEGMENT_SHIFT)];
+            ByteBuffer t = b.segments[(int) (y >>> SEGMENT_SHIFT)];
+            int p = (int) (x & SEGMENT_MASK), q = (int) (y & SEGMENT_MASK);
+            int n = (int) Math.min(len - i, Math.min(s.limit() - p, t.limit() - q));
+            int m = Mismatch.mismatch(s, p, t, q, 0, n);
+            i += m;
+            if (m < n) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    // Copy len bytes from i to dst
+    void get(long i, byte[] dst, int off, int len) {
+        while (len > 0) {
+            ByteBuffer s = segments[(int) (i >>> SEGMENT_SHIFT)].duplicate();
+            int p = (int) (i & SEGMENT_MASK);
+            int n = Math.min(len, s.limit() - p);
+            s.position(p);
+            s.get(dst, off, n);
+            i += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // Copy len bytes of src to i
+    void put(long i, byte[] src, int off, int len) {
+        while (len > 0) {
+            ByteBuffer s = segments[(int) (i >>> SEGMENT_SHIFT)].duplicate();
+            int p = (int) (i & SEGMENT_MASK);
+            int n = Math.min(len, s.limit() - p);
+            s.position(p);
+            s.put(src, off, n);
+            i += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // Stream of [off, off + len)
+    InputStream inputStream(long off, long len) {
+        return new InputStream() {
+            private long pos = off;
+            private final long end = off + len;
+
+            @Override
+            public int read() {
+                return pos < end ? get(pos++) & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int o, int n) {
+                if (pos >= end) {
+                    return -1;
+                }
+                n = (int) Math.min(n, end - pos);
+                get(pos, b, o, n);
+                pos += n;
+                return n;
+            }
+        };
+    }
+}
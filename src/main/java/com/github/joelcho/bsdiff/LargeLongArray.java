@@ -0,0 +1,95 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A long-indexed array of int64 made of segments allocated by a {@link BufferAllocator},
+ * the 64-bit suffix array of {@link LargeBSDiff}.
+ *
+ * @author Joel
+ */
+final class LargeLongArray {
+    // 2^27 longs, 1 GB per segment
+    private static final int SEGMENT_SHIFT = 27;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] buffers;
+    private final LongBuffer[] segments;
+    private final long length;
+
+    LargeLongArray(BufferAllocator ba, long length) throws IOException {
+        this.length = length;
+        this.buffers = new ByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        this.segments = new LongBuffer[buffers.length];
+        try {
+            for (int k = 0; k < segments.length; k++) {
+                long n = Math.min(1L << SEGMENT_SHIFT, length - ((long) k << SEGMENT_SHIFT));
+                buffers[k] = ba.allocate((int) (n * Long.BYTES));
+                segments[k] = buffers[k].asLongBuffer();
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            // nobody gets the array, give back the segments allocated so far
+            try {
+                release(ba);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    // Give the segments back to the allocator, the array must not be used any more
+    void release(BufferAllocator ba) throws IOException {
+        for (int k = 0; k < buffers.length; k++) {
+            if (buffers[k] != null) {
+                ba.release(buffers[k]);
+                buffers[k] = null;
+                segments[k] = null;
+            }
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    long get(long i) {
+        return segments[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+    }
+
+    void put(long i, long v) {
+        segments[(int) (i >>> SEGMENT_SHIFT)].put((int) (i & SEGMENT_MASK), v);
+    }
+}
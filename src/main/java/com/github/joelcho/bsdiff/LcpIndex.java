@@ -0,0 +1,130 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * LCP arrays of a suffix array, for the binary search in {@link LargeBSDiff#search}.
+ * <p>
+ * The search always bisects <tt>[st, en]</tt> at <tt>x = st + (en - st) / 2</tt> starting from
+ * <tt>[0, n]</tt>, so every <tt>x</tt> is the middle of exactly one interval. For that interval
+ * <tt>left[x]</tt> is the common prefix length of the suffixes at <tt>st</tt> and <tt>x</tt>,
+ * <tt>right[x]</tt> is the one of the suffixes at <tt>x</tt> and <tt>en</tt>.
+ * <p>
+ * It is read only after built, and safe for concurrent use.
+ *
+ * @author Joel
+ */
+final class LcpIndex {
+    private final ByteBuffer leftBuffer;
+    private final ByteBuffer rightBuffer;
+    private final IntBuffer left;
+    private final IntBuffer right;
+
+    private LcpIndex(ByteBuffer leftBuffer, ByteBuffer rightBuffer) {
+        this.leftBuffer = leftBuffer;
+        this.rightBuffer = rightBuffer;
+        this.left = leftBuffer.asIntBuffer();
+        this.right = rightBuffer.asIntBuffer();
+    }
+
+    int left(int x) {
+        return left.get(x);
+    }
+
+    int right(int x) {
+        return right.get(x);
+    }
+
+    /**
+     * @param old old file
+     * @param I   suffix array of old file
+     * @param ba  LCP arrays allocator
+     * @return the LCP arrays
+     * @throws IOException If some other I/O error occurs
+     */
+    static LcpIndex build(ByteBuffer old, SuffixArray I, BufferAllocator ba) throws IOException {
+        final int oldsize = old.limit();
+        ByteBuffer rankBuffer = ba.allocate((oldsize + 1) * 4);
+        ByteBuffer lcpBuffer;
+        try {
+            lcpBuffer = ba.allocate((oldsize + 1) * 4);
+        } catch (IOException | RuntimeException | Error e) {
+            ba.release(rankBuffer);
+            throw e;
+        }
+        IntBuffer rank = rankBuffer.asIntBuffer();
+        IntBuffer lcp = lcpBuffer.asIntBuffer();
+        int i, h;
+        for (i = 0; i <= oldsize; i++) rank.put(I.get(i), i);
+
+        // Kasai et al., lcp[i] is the common prefix length of the suffixes at i - 1 and i
+        h = 0;
+        for (i = 0; i < oldsize; i++) {
+            int r = rank.get(i);
+            int j = I.get(r - 1);
+            while (i + h < oldsize && j + h < oldsize && old.get(i + h) == old.get(j + h)) h++;
+            lcp.put(r, h);
+            if (h > 0) h--;
+        }
+
+        // rank is not needed any more, it becomes left. lcp[x] is last read before right[x] is written
+        fill(lcp, rank, lcp, 0, oldsize);
+        return new LcpIndex(rankBuffer, lcpBuffer);
+    }
+
+    /**
+     * Release the LCP arrays, they must not be used any more.
+     *
+     * @param ba the allocator they were built with
+     * @throws IOException If some other I/O error occurs
+     */
+    void release(BufferAllocator ba) throws IOException {
+        ba.release(rightBuffer);
+        ba.release(leftBuffer);
+    }
+
+    // returns the common prefix length of the suffixes at st and en
+    private static int fill(IntBuffer lcp, IntBuffer left, IntBuffer right, int st, int en) {
+        if (en - st < 2) {
+            return en > st ? lcp.get(en) : 0;
+        }
+        int x = st + (en - st) / 2;
+        int l = fill(lcp, left, right, st, x);
+        int r = fill(lcp, left, right, x, en);
+        left.put(x, l);
+        right.put(x, r);
+        return Math.min(l, r);
+    }
+}
@@ -0,0 +1,74 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the first differing byte of two buffers.
+ * <p>
+ * This version compares 8 bytes at a time with {@link ByteBuffer#getLong(int)}.
+ * On JDK 11+ the multi-release jar replaces it with one based on {@link ByteBuffer}<tt>.mismatch</tt>
+ * and {@link java.util.Arrays}<tt>.mismatch</tt>, which are vectorized by the JIT.
+ *
+ * @author Joel
+ */
+final class Mismatch {
+    private Mismatch() {
+    }
+
+    /**
+     * @param a    buffer a
+     * @param apos start of a
+     * @param b    buffer b
+     * @param bpos start of b
+     * @param from the first from bytes are known equal
+     * @param len  compare at most len bytes
+     * @return the first i in [from, len) that <tt>a[apos + i] != b[bpos + i]</tt>, or len if there is none
+     */
+    static int mismatch(ByteBuffer a, int apos, ByteBuffer b, int bpos, int from, int len) {
+        int i = from;
+        if (len - i >= Long.BYTES && a.order() == b.order()) {
+            final boolean bigEndian = a.order() == ByteOrder.BIG_ENDIAN;
+            for (; i <= len - Long.BYTES; i += Long.BYTES) {
+                long x = a.getLong(apos + i) ^ b.getLong(bpos + i);
+                if (x != 0) {
+                    return i + ((bigEndian ? Long.numberOfLeadingZeros(x) : Long.numberOfTrailingZeros(x)) >>> 3);
+                }
+            }
+        }
+        while (i < len && a.get(apos + i) == b.get(bpos + i)) {
+            i++;
+        }
+        return i;
+    }
+}
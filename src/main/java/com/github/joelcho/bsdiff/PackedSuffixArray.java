@@ -0,0 +1,131 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A suffix array of <tt>ceil(log2(n + 1))</tt> bits per entry, bit-packed into 64-bit words.
+ * <p>
+ * It takes <tt>bits / 32</tt> of the memory of the <tt>IntBuffer</tt> suffix array,
+ * e.g. 21 bits for a 1 MB file, 27 bits for a 100 MB file. Reading an entry costs a few shifts more,
+ * and a second word read when the entry crosses a word boundary.
+ *
+ * @author Joel
+ * @see DiffContext#withCompactSuffixArray(BufferAllocator)
+ */
+final class PackedSuffixArray implements SuffixArray {
+    private final ByteBuffer buffer;
+    private final LongBuffer words;
+    private final int bits;
+    private final long mask;
+
+    private PackedSuffixArray(ByteBuffer buffer, int bits) {
+        this.buffer = buffer;
+        this.words = buffer.asLongBuffer();
+        this.bits = bits;
+        this.mask = (1L << bits) - 1;
+    }
+
+    /**
+     * @param oldsize length of old file
+     * @return bits per entry of its suffix array
+     */
+    static int bitsOf(int oldsize) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(oldsize));
+    }
+
+    /**
+     * @param oldsize length of old file
+     * @return bytes of its packed suffix array, with one word of padding
+     */
+    static long sizeOf(int oldsize) {
+        return (((long) (oldsize + 1) * bitsOf(oldsize) + 63) / 64 + 1) * Long.BYTES;
+    }
+
+    /**
+     * @param I       the suffix array to pack
+     * @param oldsize length of old file
+     * @param ba      words allocator
+     * @return the packed copy of I
+     * @throws IOException If some other I/O error occurs
+     */
+    static PackedSuffixArray pack(SuffixArray I, int oldsize, BufferAllocator ba) throws IOException {
+        final int bits = bitsOf(oldsize);
+        final long size = sizeOf(oldsize);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("old file too big " + oldsize);
+        }
+        ByteBuffer buffer = ba.allocate((int) size);
+        LongBuffer words = buffer.asLongBuffer();
+        long acc = 0;
+        int fill = 0, w = 0;
+        for (int i = 0; i <= oldsize; i++) {
+            long v = I.get(i);
+            acc |= v << fill;
+            fill += bits;
+            if (fill >= Long.SIZE) {
+                words.put(w++, acc);
+                fill -= Long.SIZE;
+                // the high bits of v that did not fit
+                acc = v >>> (bits - fill);
+            }
+        }
+        if (fill > 0) {
+            words.put(w, acc);
+        }
+        return new PackedSuffixArray(buffer, bits);
+    }
+
+    /**
+     * Release the words, the array must not be used any more.
+     *
+     * @param ba the allocator it was packed with
+     * @throws IOException If some other I/O error occurs
+     */
+    void release(BufferAllocator ba) throws IOException {
+        ba.release(buffer);
+    }
+
+    @Override
+    public int get(int i) {
+        long bit = (long) i * bits;
+        int w = (int) (bit >>> 6);
+        int off = (int) (bit & 63);
+        long v = words.get(w) >>> off;
+        if (off + bits > Long.SIZE) {
+            v |= words.get(w + 1) << (Long.SIZE - off);
+        }
+        return (int) (v & mask);
+    }
+}
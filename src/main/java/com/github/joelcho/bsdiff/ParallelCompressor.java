@@ -0,0 +1,155 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Multi-stream block compressor, like pbzip2.
+ * <p>
+ * Input is split into {@value #BLOCK_SIZE} bytes pieces, each piece is compressed as an independent stream
+ * on the pool, and the streams are concatenated in order. A block shorter than one piece is the same
+ * as the single stream one.
+ * <p>
+ * {@link BSPatch} reads concatenated streams, the original bspatch 4.3 stops at the end of the first one.
+ *
+ * @author Joel
+ */
+final class ParallelCompressor extends OutputStream {
+    // bzip2 block size of level 9, also used for the other codecs
+    static final int BLOCK_SIZE = 900000;
+
+    private final OutputStream dest;
+    private final ForkJoinPool pool;
+    private final SectionCodec codec;
+    private final int maxPending;
+    private final Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count;
+    private boolean empty = true;
+
+    ParallelCompressor(OutputStream dest, ForkJoinPool pool, SectionCodec codec) {
+        this.dest = dest;
+        this.pool = pool;
+        this.codec = codec;
+        this.maxPending = pool.getParallelism() * 2;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == BLOCK_SIZE) {
+            submit();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == BLOCK_SIZE) {
+                submit();
+            }
+            int n = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void submit() throws IOException {
+        final byte[] b = block;
+        final int n = count;
+        pending.addLast(pool.submit(() -> compress(b, n)));
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+        empty = false;
+
+        // write the finished streams, and keep at most maxPending blocks in memory
+        while (!pending.isEmpty() && (pending.peekFirst().isDone() || pending.size() > maxPending)) {
+            writeFirst();
+        }
+    }
+
+    private byte[] compress(byte[] b, int n) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(n / 2 + 64);
+        OutputStream cOut = codec.compress(bos);
+        cOut.write(b, 0, n);
+        cOut.close();
+        return bos.toByteArray();
+    }
+
+    private void writeFirst() throws IOException {
+        try {
+            dest.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Compress the remaining bytes and write all the streams.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    void finish() throws IOException {
+        if (count > 0 || empty) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            writeFirst();
+        }
+    }
+
+    /**
+     * Cancel the blocks not compressed yet.
+     */
+    void abort() {
+        for (ForkJoinTask<byte[]> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+    }
+}
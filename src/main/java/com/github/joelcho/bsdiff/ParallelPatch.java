@@ -0,0 +1,290 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel patch apply.
+ * <p>
+ * The ctrl block is decoded first into the absolute positions of every tuple. Then the streams of the diff
+ * and extra blocks, see {@link ParallelCompressor}, are decompressed concurrently, and the decoded bytes are
+ * cut into {@value #CHUNK_SIZE} bytes chunks that are added to old file and written to disjoint ranges
+ * of new file on the pool. A block of one stream is decompressed by one thread, still concurrently with
+ * the other block.
+ *
+ * @author Joel
+ * @see BSPatch#patch(ByteBuffer, ByteBuffer, ByteBuffer, ForkJoinPool)
+ */
+final class ParallelPatch {
+    // decoded bytes of one task
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private final ByteBuffer old;
+    private final ByteBuffer new0;
+    // tuple k writes difflen[k] diff bytes at newpos[k], then extralen[k] extra bytes,
+    // its diff bytes start at diffStart[k] of the decoded diff block, and its extra bytes at extraStart[k]
+    private int count;
+    private int[] newpos = new int[64];
+    private long[] oldpos = new long[64];
+    private int[] difflen = new int[64];
+    private int[] extralen = new int[64];
+    private long[] diffStart = new long[64];
+    private long[] extraStart = new long[64];
+    private long diffTotal;
+    private long extraTotal;
+
+    private ParallelPatch(ByteBuffer old, ByteBuffer new0) {
+        this.old = old;
+        this.new0 = new0;
+    }
+
+    static void patch(ByteBuffer old, ByteBuffer new0, ByteBuffer patch, ForkJoinPool pool) throws IOException {
+        final Object[] header = BSPatch.parseHeader(patch);
+        final SectionCodec codec = (SectionCodec) header[0];
+        final long bzctrllen = (Long) header[1];
+        final long bzdatalen = (Long) header[2];
+        final long newsize = (Long) header[3];
+        if (BSDiff.HEADER_SIZE + bzctrllen + bzdatalen > patch.limit()) {
+            BSPatch.corruptPatch();
+        }
+        if (newsize > new0.limit()) {
+            throw new IOException("short new buffer, require at least " + newsize);
+        }
+        ParallelPatch pp = new ParallelPatch(old.duplicate(), new0.duplicate());
+        int off = BSDiff.HEADER_SIZE;
+        pp.decodeCtrl(BSPatch.mkbzi(patch, off, bzctrllen, codec), (int) newsize);
+        off += bzctrllen;
+        ByteBuffer diff = BSDiff.slice(patch, off, (int) bzdatalen);
+        off += bzdatalen;
+        ByteBuffer extra = BSDiff.slice(patch, off, patch.limit() - off);
+
+        // decompress the streams of both blocks at the same time
+        List<ForkJoinTask<ByteBuffer>> diffPieces = decode(diff, codec, pp.diffTotal, pool);
+        List<ForkJoinTask<ByteBuffer>> extraPieces = decode(extra, codec, pp.extraTotal, pool);
+        List<ByteBuffer> diffData = join(diffPieces, diff, codec, pp.diffTotal);
+        List<ByteBuffer> extraData = join(extraPieces, extra, codec, pp.extraTotal);
+
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+        pp.submit(diffData, pp.diffTotal, true, pool, tasks);
+        pp.submit(extraData, pp.extraTotal, false, pool, tasks);
+        for (ForkJoinTask<Void> task : tasks) {
+            get(task);
+        }
+    }
+
+    // Same checks as the sequential patch
+    private void decodeCtrl(InputStream in, int newsize) throws IOException {
+        final byte[] buf = new byte[24];
+        long pos = 0, opos = 0;
+        while (pos < newsize) {
+            if (BSPatch.readFully(in, buf, 0, 24) != 24) {
+                BSPatch.corruptPatch();
+            }
+            long c0 = BSPatch.offtin(buf, 0), c1 = BSPatch.offtin(buf, 8), c2 = BSPatch.offtin(buf, 16);
+            if (c0 < 0 || c1 < 0 || pos + c0 > newsize || pos + c0 + c1 > newsize) {
+                BSPatch.corruptPatch();
+            }
+            if (count == newpos.length) {
+                int n = count * 2;
+                newpos = Arrays.copyOf(newpos, n);
+                oldpos = Arrays.copyOf(oldpos, n);
+                difflen = Arrays.copyOf(difflen, n);
+                extralen = Arrays.copyOf(extralen, n);
+                diffStart = Arrays.copyOf(diffStart, n);
+                extraStart = Arrays.copyOf(extraStart, n);
+            }
+            newpos[count] = (int) pos;
+            oldpos[count] = opos;
+            difflen[count] = (int) c0;
+            extralen[count] = (int) c1;
+            diffStart[count] = diffTotal;
+            extraStart[count] = extraTotal;
+            count++;
+            diffTotal += c0;
+            extraTotal += c1;
+            pos += c0 + c1;
+            opos += c0 + c2;
+        }
+    }
+
+    // Decompress the streams of the block on the pool
+    private static List<ForkJoinTask<ByteBuffer>> decode(ByteBuffer block, SectionCodec codec, long total,
+                                                         ForkJoinPool pool) {
+        List<ForkJoinTask<ByteBuffer>> pieces = new ArrayList<>();
+        if (codec == SectionCodec.RAW) {
+            return pieces;
+        }
+        int[] starts = SectionCodecs.streamStarts(codec, block);
+        for (int k = 0; k < starts.length; k++) {
+            final int begin = starts[k];
+            final int end = k + 1 < starts.length ? starts[k + 1] : block.limit();
+            final int hint = (int) Math.min(total, starts.length == 1 ? Integer.MAX_VALUE : ParallelCompressor.BLOCK_SIZE);
+            pieces.add(pool.submit(() -> readAll(BSPatch.mkbzi(block.duplicate(), begin, end - begin, codec), hint)));
+        }
+        return pieces;
+    }
+
+    // The decoded pieces, or the whole block decoded at once if the stream starts were wrong
+    private static List<ByteBuffer> join(List<ForkJoinTask<ByteBuffer>> pieces, ByteBuffer block, SectionCodec codec,
+                                         long total) throws IOException {
+        if (codec == SectionCodec.RAW) {
+            List<ByteBuffer> data = new ArrayList<>();
+            data.add(block);
+            return data;
+        }
+        List<ByteBuffer> data = new ArrayList<>(pieces.size());
+        long size = 0;
+        boolean failed = false;
+        for (ForkJoinTask<ByteBuffer> piece : pieces) {
+            try {
+                ByteBuffer b = get(piece);
+                data.add(b);
+                size += b.limit();
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+        if (pieces.size() > 1 && (failed || size < total)) {
+            data.clear();
+            data.add(readAll(BSPatch.mkbzi(block, 0, block.limit(), codec), (int) Math.min(total, Integer.MAX_VALUE)));
+        } else if (failed) {
+            BSPatch.corruptPatch();
+        }
+        return data;
+    }
+
+    private static ByteBuffer readAll(InputStream in, int hint) throws IOException {
+        byte[] buf = new byte[Math.max(hint, 8192)];
+        int size = 0;
+        for (; ; ) {
+            if (size == buf.length) {
+                if (size == Integer.MAX_VALUE - 8) {
+                    throw new IOException("block is too big");
+                }
+                buf = Arrays.copyOf(buf, (int) Math.min(Integer.MAX_VALUE - 8, (long) size * 2));
+            }
+            int n = in.read(buf, size, buf.length - size);
+            if (n < 0) {
+                break;
+            }
+            size += n;
+        }
+        return ByteBuffer.wrap(buf, 0, size).slice();
+    }
+
+    // Cut the decoded block into chunks and apply them on the pool
+    private void submit(List<ByteBuffer> data, long total, boolean diff, ForkJoinPool pool,
+                        List<ForkJoinTask<Void>> tasks) throws IOException {
+        long streamOff = 0;
+        for (ByteBuffer piece : data) {
+            int len = (int) Math.min(piece.limit(), total - streamOff);
+            for (int off = 0; off < len; off += CHUNK_SIZE) {
+                final int dataOff = off, n = Math.min(CHUNK_SIZE, len - off);
+                final long x = streamOff + off;
+                tasks.add(pool.submit((Callable<Void>) () -> {
+                    apply(piece, dataOff, x, n, diff);
+                    return null;
+                }));
+            }
+            streamOff += len;
+        }
+        if (streamOff < total) {
+            throw new IOException("short read");
+        }
+    }
+
+    // Write len decoded bytes at x of the block, diff bytes are added to old file
+    private void apply(ByteBuffer data, int dataOff, long x, int len, boolean diff) {
+        final long[] starts = diff ? diffStart : extraStart;
+        final int[] lens = diff ? difflen : extralen;
+        final ByteBuffer src = data.duplicate();
+        final ByteBuffer dst = new0.duplicate();
+        final byte[] temp = new byte[Math.min(len, 16384)];
+        final byte[] oldTemp = diff ? new byte[temp.length] : null;
+        while (len > 0) {
+            int t = find(starts, x);
+            int inTuple = (int) (x - starts[t]);
+            int n = Math.min(Math.min(len, lens[t] - inTuple), temp.length);
+            src.position(dataOff);
+            src.get(temp, 0, n);
+            if (diff) {
+                ByteAdd.add(temp, 0, old, oldpos[t] + inTuple, n, oldTemp);
+                dst.position(newpos[t] + inTuple);
+            } else {
+                dst.position(newpos[t] + difflen[t] + inTuple);
+            }
+            dst.put(temp, 0, n);
+            x += n;
+            dataOff += n;
+            len -= n;
+        }
+    }
+
+    // The last tuple starting at or before x, it is the one holding x since empty tuples start where the next one does
+    private int find(long[] starts, long x) {
+        int lo = 0, hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= x) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    static <T> T get(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
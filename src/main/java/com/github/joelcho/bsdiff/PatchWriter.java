@@ -0,0 +1,161 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes control tuples as a BSDIFF40 patch.
+ * <p>
+ * The ctrl block is compressed straight into the output, diff and extra bytes are compressed
+ * as the tuples arrive and held in {@link BlockSpill}s until the ctrl block is done.
+ * Memory does not grow with old or new file, at most {@value BlockSpill#THRESHOLD} bytes of each held block
+ * stay in memory and the rest goes to a temp file.
+ * <p>
+ * With {@link Compression#pipelined()} each block is compressed by a {@link PipedCompressor} on its own thread,
+ * the scan only does the subtraction and copying.
+ *
+ * @author Joel
+ * @see BSDiff#diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator, QSufSort)
+ */
+final class PatchWriter implements ControlSink {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final LargeByteBuffer old;
+    private final LargeByteBuffer new0;
+    private final SeekableOutputStream out;
+    private final OutputStream ctrlOut;
+    private final BlockSpill diffBlock;
+    private final BlockSpill extraBlock;
+    private final OutputStream diffOut;
+    private final OutputStream extraOut;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] oldChunk = new byte[CHUNK_SIZE];
+    private final byte[] magic;
+
+    PatchWriter(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba) throws IOException {
+        this(old, new0, out, ba, Compression.SEQUENTIAL);
+    }
+
+    PatchWriter(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, BufferAllocator ba,
+                Compression compression) throws IOException {
+        this(LargeByteBuffer.wrap(old), LargeByteBuffer.wrap(new0), out, ba, compression);
+    }
+
+    PatchWriter(LargeByteBuffer old, LargeByteBuffer new0, SeekableOutputStream out, BufferAllocator ba,
+                Compression compression) throws IOException {
+        this.old = old;
+        this.new0 = new0;
+        this.out = out;
+
+        this.magic = compression.getCodec().getMagic();
+
+        out.write(new byte[BSDiff.HEADER_SIZE]); // header placeholder
+        out.flush();
+        diffBlock = new BlockSpill(ba);
+        extraBlock = new BlockSpill(ba);
+        // the caller gets no writer to abort if this fails, stop the compressors started so far
+        OutputStream ctrl = null, diff = null;
+        try {
+            ctrl = compression.open(out, "ctrl");
+            diff = compression.open(diffBlock, "diff");
+            extraOut = compression.open(extraBlock, "extra");
+        } catch (IOException | RuntimeException | Error e) {
+            Compression.abort(ctrl);
+            Compression.abort(diff);
+            throw e;
+        }
+        ctrlOut = ctrl;
+        diffOut = diff;
+    }
+
+    @Override
+    public void accept(long newpos, long oldpos, long difflen, long extralen, long seek) throws IOException {
+        int i, n;
+        for (long done = 0; done < difflen; done += n) {
+            n = (int) Math.min(CHUNK_SIZE, difflen - done);
+            new0.get(newpos + done, chunk, 0, n);
+            old.get(oldpos + done, oldChunk, 0, n);
+            for (i = 0; i < n; i++)
+                chunk[i] -= oldChunk[i];
+            diffOut.write(chunk, 0, n);
+        }
+        for (long done = 0; done < extralen; done += n) {
+            n = (int) Math.min(CHUNK_SIZE, extralen - done);
+            new0.get(newpos + difflen + done, chunk, 0, n);
+            extraOut.write(chunk, 0, n);
+        }
+
+        ctrlOut.write(BSDiff.offtout(difflen));
+        ctrlOut.write(BSDiff.offtout(extralen));
+        ctrlOut.write(BSDiff.offtout(seek));
+    }
+
+    /**
+     * Append diff and extra blocks and fill the header.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    void finish() throws IOException {
+        Compression.finish(ctrlOut);
+        Compression.finish(diffOut);
+        Compression.finish(extraOut);
+
+        // Compute size of compressed ctrl data
+        long ctrlDataLen = out.position() - BSDiff.HEADER_SIZE;
+
+        // Write compressed diff data and extra data
+        diffBlock.writeTo(out);
+        extraBlock.writeTo(out);
+
+        // fill header
+        out.seek(0);
+        out.write(magic);
+        out.write(BSDiff.offtout(ctrlDataLen));
+        out.write(BSDiff.offtout(diffBlock.size()));
+        out.write(BSDiff.offtout(new0.size()));
+        out.flush();
+    }
+
+    /**
+     * Stop the compressor threads after a failed scan and delete the spilled blocks,
+     * also called after {@link #finish()}.
+     */
+    void abort() {
+        Compression.abort(ctrlOut);
+        Compression.abort(diffOut);
+        Compression.abort(extraOut);
+        diffBlock.discard();
+        extraBlock.discard();
+    }
+}
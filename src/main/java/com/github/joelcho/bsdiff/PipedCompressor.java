@@ -0,0 +1,171 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Block compressor running on its own thread.
+ * <p>
+ * Written bytes are collected into chunks and handed to the thread through a bounded queue,
+ * so the writer only blocks when the compressor is more than {@value #QUEUE_SIZE} chunks behind.
+ *
+ * @author Joel
+ */
+final class PipedCompressor extends OutputStream {
+    static final int CHUNK_SIZE = 1 << 16;
+    static final int QUEUE_SIZE = 4;
+    // marks the end of input
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread thread;
+    private volatile Throwable error;
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int count;
+
+    PipedCompressor(OutputStream dest, String name, SectionCodec codec) {
+        thread = new Thread(() -> run(dest, codec), name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(OutputStream dest, SectionCodec codec) {
+        try {
+            OutputStream cOut = codec.compress(new Compression.Unclosable(dest));
+            byte[] b;
+            while ((b = queue.take()) != EOF) {
+                cOut.write(b);
+            }
+            cOut.close();
+        } catch (InterruptedException e) {
+            // aborted
+        } catch (Throwable e) {
+            error = e;
+            // keep draining, the writer may be blocked on a full queue
+            try {
+                while (queue.take() != EOF) {
+                    // discard
+                }
+            } catch (InterruptedException ignored) {
+                // aborted
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == CHUNK_SIZE) {
+            flushChunk();
+        }
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == CHUNK_SIZE) {
+                flushChunk();
+            }
+            int n = Math.min(len, CHUNK_SIZE - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        checkError();
+        put(count == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, count));
+        chunk = new byte[CHUNK_SIZE];
+        count = 0;
+    }
+
+    private void put(byte[] b) throws IOException {
+        try {
+            queue.put(b);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void checkError() throws IOException {
+        Throwable e = error;
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Compress the remaining bytes and wait for the compressed stream to be finished.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    void finish() throws IOException {
+        if (count > 0) {
+            flushChunk();
+        }
+        put(EOF);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        checkError();
+    }
+
+    /**
+     * Stop the compressor thread without finishing the stream, and wait for it to exit
+     * so the destination is no longer written when this returns.
+     */
+    void abort() {
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
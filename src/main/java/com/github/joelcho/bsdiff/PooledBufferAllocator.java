@@ -0,0 +1,201 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * BufferAllocator that keeps released buffers for the next allocations.
+ * <p>
+ * The backing buffers, direct or mapped, are allocated in size classes of <tt>2^k</tt> and
+ * <tt>1.5 * 2^k</tt> bytes, so back-to-back diffs of similar sizes reuse the same memory
+ * instead of mapping new temp files or waiting for the garbage collector to free direct memory.
+ * Reused buffers are zeroed before handed out again.
+ *
+ * <pre>{@code
+ * try (FileBufferAllocator files = new FileBufferAllocator();
+ *      PooledBufferAllocator pool = new PooledBufferAllocator(files, 1L << 30)) {
+ *     for (...) {
+ *         try (BufferArena arena = new BufferArena(pool)) {
+ *             BSDiff.diff(old, new0, out, arena);
+ *         }
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author Joel
+ * @see BufferArena
+ */
+public class PooledBufferAllocator implements BufferAllocator, Closeable {
+    private static final int MIN_CLASS = 4096;
+
+    private final BufferAllocator backing;
+    private final long maxPooled;
+    private final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+    private final Map<ByteBuffer, ByteBuffer> inUse = new IdentityHashMap<>();
+    private long pooled;
+
+    /**
+     * Pool direct buffers.
+     *
+     * @param maxPooled max bytes kept for reuse
+     */
+    public PooledBufferAllocator(long maxPooled) {
+        this(ByteBuffer::allocateDirect, maxPooled);
+    }
+
+    /**
+     * @param backing   allocator of the pooled buffers, usually direct or a {@link FileBufferAllocator}
+     * @param maxPooled max bytes kept for reuse, buffers released beyond it go back to the backing allocator
+     */
+    public PooledBufferAllocator(BufferAllocator backing, long maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("invalid pool size " + maxPooled);
+        }
+        this.backing = backing;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @param size buffer size
+     * @return the smallest size class not less than size
+     */
+    static int sizeClass(int size) {
+        if (size <= MIN_CLASS) {
+            return MIN_CLASS;
+        }
+        int high = Integer.highestOneBit(size);
+        if (size == high) {
+            return size;
+        }
+        int mid = high + (high >>> 1);
+        if (size <= mid) {
+            return mid;
+        }
+        return high > (Integer.MAX_VALUE >>> 1) ? size : high << 1;
+    }
+
+    @Override
+    public ByteBuffer allocate(int size) throws IllegalArgumentException, IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("invalid buffer size " + size);
+        }
+        final int cls = sizeClass(size);
+        ByteBuffer buffer;
+        synchronized (this) {
+            ArrayDeque<ByteBuffer> list = free.get(cls);
+            buffer = list == null ? null : list.poll();
+            if (buffer != null) {
+                pooled -= cls;
+            }
+        }
+        if (buffer == null) {
+            buffer = backing.allocate(cls);
+        } else {
+            buffer.clear();
+            zero(buffer, size);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        ByteBuffer slice = buffer.slice();
+        synchronized (this) {
+            inUse.put(slice, buffer);
+        }
+        return slice;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) throws IOException {
+        ByteBuffer backed;
+        synchronized (this) {
+            backed = inUse.remove(buffer);
+            if (backed == null) {
+                return;
+            }
+            final int cls = backed.capacity();
+            if (pooled + cls <= maxPooled) {
+                free.computeIfAbsent(cls, k -> new ArrayDeque<>()).push(backed);
+                pooled += cls;
+                return;
+            }
+        }
+        backing.release(backed);
+    }
+
+    private static void zero(ByteBuffer buffer, int size) {
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        for (; i < size; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * @return bytes kept for reuse
+     */
+    public synchronized long getPooled() {
+        return pooled;
+    }
+
+    /**
+     * Give all the kept buffers back to the backing allocator, the buffers in use are left to their owners.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        IOException err = null;
+        synchronized (this) {
+            for (ArrayDeque<ByteBuffer> list : free.values()) {
+                for (ByteBuffer buffer : list) {
+                    try {
+                        backing.release(buffer);
+                    } catch (IOException e) {
+                        err = e;
+                    }
+                }
+            }
+            free.clear();
+            pooled = 0;
+        }
+        if (err != null) {
+            throw err;
+        }
+    }
+}
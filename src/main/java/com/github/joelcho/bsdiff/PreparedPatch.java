@@ -0,0 +1,401 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A patch decoded once and applied many times.
+ * <p>
+ * The header is parsed, the ctrl block is decoded into its tuples, and the diff and extra blocks are
+ * decompressed when the patch is prepared. Applying it then only adds old file to the diff bytes and
+ * copies the extra bytes. A prepared patch is immutable, {@link #applyTo(ByteBuffer, ByteBuffer)} and
+ * {@link #applyTo(SeekableInput, OutputStream)} may be called from many threads at once.
+ * <p>
+ * The decoded blocks take about the size of new file, on heap by default or from an allocator,
+ * see {@link #prepare(ByteBuffer, BufferAllocator)}.
+ *
+ * @author Joel
+ * @see Cache
+ */
+public final class PreparedPatch implements Closeable {
+    private final int newsize;
+    // tuple k adds difflen[k] diff bytes to old file from oldpos[k], then copies extralen[k] extra bytes
+    private final int count;
+    private final long[] oldpos;
+    private final int[] difflen;
+    private final int[] extralen;
+    private final ByteBuffer diff;
+    private final ByteBuffer extra;
+    // null when the blocks are on heap
+    private final BufferAllocator ba;
+
+    private PreparedPatch(int newsize, int count, long[] oldpos, int[] difflen, int[] extralen,
+                          ByteBuffer diff, ByteBuffer extra, BufferAllocator ba) {
+        this.newsize = newsize;
+        this.count = count;
+        this.oldpos = oldpos;
+        this.difflen = difflen;
+        this.extralen = extralen;
+        this.diff = diff;
+        this.extra = extra;
+        this.ba = ba;
+    }
+
+    /**
+     * Decode a patch on heap.
+     *
+     * @param patch patch buffer, it is not referenced after this returns
+     * @return the prepared patch
+     * @throws IOException If the patch is corrupt, or some other I/O error occurs
+     */
+    public static PreparedPatch prepare(ByteBuffer patch) throws IOException {
+        return prepare(patch, ByteBuffer::allocate, null);
+    }
+
+    /**
+     * Decode a patch into buffers of the allocator, they are released by {@link #close()}.
+     *
+     * @param patch patch buffer, it is not referenced after this returns
+     * @param ba    allocator of the decoded diff and extra blocks
+     * @return the prepared patch
+     * @throws IOException If the patch is corrupt, or some other I/O error occurs
+     */
+    public static PreparedPatch prepare(ByteBuffer patch, BufferAllocator ba) throws IOException {
+        return prepare(patch, ba, ba);
+    }
+
+    private static PreparedPatch prepare(ByteBuffer patch, BufferAllocator ba, BufferAllocator owner)
+            throws IOException {
+        final Object[] header = BSPatch.parseHeader(patch);
+        final SectionCodec codec = (SectionCodec) header[0];
+        final long bzctrllen = (Long) header[1];
+        final long bzdatalen = (Long) header[2];
+        final long newsize = (Long) header[3];
+        if (BSDiff.HEADER_SIZE + bzctrllen + bzdatalen > patch.limit()) {
+            BSPatch.corruptPatch();
+        }
+        if (newsize > Integer.MAX_VALUE) {
+            throw new IOException("new file is too big to prepare " + newsize);
+        }
+
+        // read control data, same checks as the sequential patch
+        int count = 0;
+        long[] oldpos = new long[64];
+        int[] difflen = new int[64];
+        int[] extralen = new int[64];
+        long diffTotal = 0, extraTotal = 0;
+        int off = BSDiff.HEADER_SIZE;
+        final InputStream cpfbz2 = BSPatch.mkbzi(patch, off, bzctrllen, codec);
+        final byte[] buf = new byte[24];
+        for (long pos = 0, opos = 0; pos < newsize; ) {
+            if (BSPatch.readFully(cpfbz2, buf, 0, 24) != 24) {
+                BSPatch.corruptPatch();
+            }
+            long c0 = BSPatch.offtin(buf, 0), c1 = BSPatch.offtin(buf, 8), c2 = BSPatch.offtin(buf, 16);
+            if (c0 < 0 || c1 < 0 || pos + c0 > newsize || pos + c0 + c1 > newsize) {
+                BSPatch.corruptPatch();
+            }
+            if (count == oldpos.length) {
+                oldpos = Arrays.copyOf(oldpos, count * 2);
+                difflen = Arrays.copyOf(difflen, count * 2);
+                extralen = Arrays.copyOf(extralen, count * 2);
+            }
+            oldpos[count] = opos;
+            difflen[count] = (int) c0;
+            extralen[count] = (int) c1;
+            count++;
+            diffTotal += c0;
+            extraTotal += c1;
+            pos += c0 + c1;
+            opos += c0 + c2;
+        }
+        off += bzctrllen;
+
+        ByteBuffer diff = decode(BSPatch.mkbzi(patch, off, bzdatalen, codec), (int) diffTotal, ba);
+        off += bzdatalen;
+        ByteBuffer extra;
+        try {
+            extra = decode(BSPatch.mkbzi(patch, off, patch.limit() - off, codec), (int) extraTotal, ba);
+        } catch (IOException | RuntimeException e) {
+            release(ba, diff);
+            throw e;
+        }
+        return new PreparedPatch((int) newsize, count, oldpos, difflen, extralen, diff, extra, owner);
+    }
+
+    // Decompress len bytes of a block into a buffer of ba
+    private static ByteBuffer decode(InputStream in, int len, BufferAllocator ba) throws IOException {
+        if (len == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        final ByteBuffer block = ba.allocate(len);
+        try {
+            if (block.hasArray()) {
+                if (BSPatch.readFully(in, block.array(), block.arrayOffset(), len) != len) {
+                    throw new IOException("short read");
+                }
+            } else {
+                final byte[] temp = new byte[Math.min(len, BSPatch.STREAM_BUFFER_SIZE)];
+                for (int done = 0, n; done < len; done += n) {
+                    n = Math.min(temp.length, len - done);
+                    if (BSPatch.readFully(in, temp, 0, n) != n) {
+                        throw new IOException("short read");
+                    }
+                    block.put(temp, 0, n);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            ba.release(block);
+            throw e;
+        }
+        block.position(0).limit(len);
+        return block;
+    }
+
+    /**
+     * @return the size of new file
+     */
+    public int newSize() {
+        return newsize;
+    }
+
+    /**
+     * @return bytes held by the decoded tuples and blocks
+     */
+    public long size() {
+        return diff.capacity() + extra.capacity() + count * 16L;
+    }
+
+    /**
+     * Apply this patch.
+     *
+     * @param old  the existing
+     * @param new0 the new, at least {@link #newSize()} bytes
+     * @throws IOException If some other I/O error occurs
+     */
+    public void applyTo(ByteBuffer old, ByteBuffer new0) throws IOException {
+        if (newsize > new0.limit()) {
+            throw new IOException("short new buffer, require at least " + newsize);
+        }
+        final ByteBuffer d = diff.duplicate();
+        final ByteBuffer e = extra.duplicate();
+        final ByteBuffer target = BSDiff.subRef(new0, 0);
+        final byte[] temp = new byte[10240];
+        final byte[] oldTemp = new byte[temp.length];
+        for (int k = 0; k < count; k++) {
+            // add old data to diff string
+            for (int done = 0, n; done < difflen[k]; done += n) {
+                n = Math.min(temp.length, difflen[k] - done);
+                d.get(temp, 0, n);
+                ByteAdd.add(temp, 0, old, oldpos[k] + done, n, oldTemp);
+                target.put(temp, 0, n);
+            }
+
+            // copy extra string
+            e.limit(e.position() + extralen[k]);
+            target.put(e);
+        }
+    }
+
+    /**
+     * Apply this patch, new file is written sequentially.
+     *
+     * @param old the existing
+     * @param out new file output, it is neither flushed nor closed
+     * @throws IOException If some other I/O error occurs
+     */
+    public void applyTo(SeekableInput old, OutputStream out) throws IOException {
+        final long oldsize = old.size();
+        final ByteBuffer d = diff.duplicate();
+        final ByteBuffer e = extra.duplicate();
+        final byte[] temp = new byte[BSPatch.STREAM_BUFFER_SIZE];
+        final byte[] oldTemp = new byte[temp.length];
+        for (int k = 0; k < count; k++) {
+            // add old data to diff string
+            for (int done = 0, n; done < difflen[k]; done += n) {
+                n = Math.min(temp.length, difflen[k] - done);
+                d.get(temp, 0, n);
+                ByteAdd.add(temp, 0, old, oldsize, oldpos[k] + done, n, oldTemp);
+                out.write(temp, 0, n);
+            }
+
+            // copy extra string
+            for (int done = 0, n; done < extralen[k]; done += n) {
+                n = Math.min(temp.length, extralen[k] - done);
+                e.get(temp, 0, n);
+                out.write(temp, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Release the decoded blocks to the allocator of {@link #prepare(ByteBuffer, BufferAllocator)},
+     * no apply may be running or started after this. Patches decoded on heap need not be closed.
+     *
+     * @throws IOException If some other I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (ba != null) {
+            release(ba, diff);
+            release(ba, extra);
+        }
+    }
+
+    // Empty blocks are not from the allocator
+    private static void release(BufferAllocator ba, ByteBuffer block) throws IOException {
+        if (block.capacity() > 0) {
+            ba.release(block);
+        }
+    }
+
+    /**
+     * Loads the patch of a key.
+     *
+     * @param <K> key type
+     */
+    @FunctionalInterface
+    public interface Loader<K> {
+        /**
+         * @param key the key
+         * @return the patch of key, it is not referenced after it is prepared
+         * @throws IOException If some I/O error occurs
+         */
+        ByteBuffer load(K key) throws IOException;
+    }
+
+    /**
+     * Prepared patches by key, the least recently used are dropped once the decoded bytes exceed a bound.
+     * <p>
+     * Patches are decoded on heap, so a patch dropped while other threads still apply it stays valid
+     * until they return. Concurrent misses of one key decode it once.
+     *
+     * @param <K> key type, with {@link Object#equals(Object)} and {@link Object#hashCode()}
+     */
+    public static final class Cache<K> {
+        private final long maxSize;
+        private final Loader<K> loader;
+        private final LinkedHashMap<K, PreparedPatch> patches = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<K, FutureTask<PreparedPatch>> loading = new HashMap<>();
+        private long size;
+
+        /**
+         * @param maxSize bound of {@link PreparedPatch#size()} summed over the cached patches
+         * @param loader  loads the patch of a missing key
+         */
+        public Cache(long maxSize, Loader<K> loader) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("negative size " + maxSize);
+            }
+            this.maxSize = maxSize;
+            this.loader = loader;
+        }
+
+        /**
+         * Get the prepared patch of key, loading and preparing it if it is not cached.
+         *
+         * @param key the key
+         * @return the prepared patch
+         * @throws IOException If the loader fails, the patch is corrupt, or some other I/O error occurs
+         */
+        public PreparedPatch get(K key) throws IOException {
+            FutureTask<PreparedPatch> task;
+            boolean owner = false;
+            synchronized (this) {
+                PreparedPatch patch = patches.get(key);
+                if (patch != null) {
+                    return patch;
+                }
+                task = loading.get(key);
+                if (task == null) {
+                    task = new FutureTask<>(() -> prepare(loader.load(key)));
+                    loading.put(key, task);
+                    owner = true;
+                }
+            }
+            if (owner) {
+                task.run();
+                synchronized (this) {
+                    loading.remove(key);
+                    if (!task.isCancelled()) {
+                        add(key, task);
+                    }
+                }
+            }
+            return ParallelPatch.get(task);
+        }
+
+        private void add(K key, FutureTask<PreparedPatch> task) {
+            PreparedPatch patch;
+            try {
+                patch = task.get();
+            } catch (Exception e) {
+                return;
+            }
+            patches.put(key, patch);
+            size += patch.size();
+            for (Iterator<PreparedPatch> it = patches.values().iterator(); size > maxSize && it.hasNext(); ) {
+                size -= it.next().size();
+                it.remove();
+            }
+        }
+
+        /**
+         * Drop the patch of key, the next {@link #get(Object)} loads it again.
+         *
+         * @param key the key
+         */
+        public synchronized void invalidate(K key) {
+            PreparedPatch patch = patches.remove(key);
+            if (patch != null) {
+                size -= patch.size();
+            }
+        }
+
+        /**
+         * @return {@link PreparedPatch#size()} summed over the cached patches
+         */
+        public synchronized long size() {
+            return size;
+        }
+    }
+}
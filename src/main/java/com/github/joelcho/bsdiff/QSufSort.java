@@ -10,12 +10,29 @@ import java.nio.IntBuffer;
  * {@link QSufSortByteArrayImpl} is a faster implementation, but it only uses JVM memory.
  * {@link QSufSortByteBufferImpl} is a slower implementation, it uses allocated memory by an {@link BufferAllocator}.
  * <p>
+ * {@link QSufSortSAISImpl} runs in linear time and only needs the suffix array itself (no <tt>V</tt> array),
+ * it works on JVM memory or on memory allocated by an {@link BufferAllocator}.
+ * {@link QSufSortParallelImpl} sorts the groups of each doubling step on a {@link java.util.concurrent.ForkJoinPool}.
+ * <p>
  * For large files (which size bigger than RAM) {@link QSufSortByteBufferImpl} is better,
  * otherwise {@link QSufSortByteArrayImpl} is best.
  *
  * @see QSufSortByteArrayImpl
  * @see QSufSortByteBufferImpl
+ * @see QSufSortSAISImpl
+ * @see QSufSortParallelImpl
  */
 public interface QSufSort {
     IntBuffer sort(ByteBuffer buffer, int length) throws IOException;
+
+    /**
+     * Release the memory of a suffix array returned by {@link #sort(ByteBuffer, int)}, it must not be used any more.
+     * The default does nothing.
+     *
+     * @param I the suffix array
+     * @throws IOException If some other I/O error occurs
+     * @see BufferAllocator#release(ByteBuffer)
+     */
+    default void release(IntBuffer I) throws IOException {
+    }
 }
@@ -78,9 +78,11 @@ public class QSufSortByteArrayImpl implements QSufSort
             array[i] = Byte.toUnsignedInt(buffer.get(i));
         }
         int[] ints = buildSuffixArray(array, 0, length);
+        // ints[0..length-1] are the suffixes without the empty one, bsdiff expects it at I[0]
         IntBuffer buf = ByteBuffer.allocate((length + 1) * 4).asIntBuffer();
-        for (int i = 0; i < ints.length; i++) {
-            buf.put(i, ints[i]);
+        buf.put(0, length);
+        for (int i = 0; i < length; i++) {
+            buf.put(i + 1, ints[i]);
         }
         return buf;
     }
@@ -29,10 +29,14 @@ package com.github.joelcho.bsdiff;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 public class QSufSortByteBufferImpl implements QSufSort {
 
     private final BufferAllocator allocator;
+    // backing buffers of the suffix arrays not released yet
+    private final Map<IntBuffer, ByteBuffer> sorted = new IdentityHashMap<>();
 
     public QSufSortByteBufferImpl(BufferAllocator allocator) {
         this.allocator = allocator;
@@ -40,12 +44,35 @@ public class QSufSortByteBufferImpl implements QSufSort {
 
     @Override
     public IntBuffer sort(ByteBuffer buffer, int length) throws IOException {
-        IntBuffer I = allocator.allocate((length + 1) * 4).asIntBuffer();
-        IntBuffer V = allocator.allocate((length + 1) * 4).asIntBuffer();
-        qsufsort(I, V, buffer, length);
+        ByteBuffer ib = allocator.allocate((length + 1) * 4);
+        IntBuffer I = ib.asIntBuffer();
+        // V is only needed while sorting
+        ByteBuffer vb = allocator.allocate((length + 1) * 4);
+        try {
+            qsufsort(I, vb.asIntBuffer(), buffer, length);
+        } catch (RuntimeException e) {
+            allocator.release(ib);
+            throw e;
+        } finally {
+            allocator.release(vb);
+        }
+        synchronized (sorted) {
+            sorted.put(I, ib);
+        }
         return I;
     }
 
+    @Override
+    public void release(IntBuffer I) throws IOException {
+        ByteBuffer ib;
+        synchronized (sorted) {
+            ib = sorted.remove(I);
+        }
+        if (ib != null) {
+            allocator.release(ib);
+        }
+    }
+
     private static void qsufsort(IntBuffer I, IntBuffer V, ByteBuffer old, int oldsize) {
         int[] buckets = new int[256];
         int i, h, len;
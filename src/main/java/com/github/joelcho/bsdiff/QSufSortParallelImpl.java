@@ -0,0 +1,308 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel prefix doubling.
+ * <p>
+ * Same groups as {@link QSufSortByteBufferImpl}, but every doubling step is split in two phases
+ * so that the unsorted groups can be processed independently on a {@link ForkJoinPool}:
+ * <ol>
+ * <li>sort each group by <tt>V[I[i] + h]</tt> and mark where the keys change, <tt>V</tt> is only read</li>
+ * <li>write the new group numbers into <tt>V</tt>, nothing is compared</li>
+ * </ol>
+ * A suffix array is unique, so the result is identical to the sequential implementations.
+ * <p>
+ * It uses JVM memory only: <tt>9 * (n + 1)</tt> bytes for <tt>I</tt>, <tt>V</tt> and the group heads,
+ * and the list of unsorted groups of a step with their prefix sums. Every such group has two suffixes or more,
+ * so there are at most <tt>(n + 1) / 2</tt> of them and the list grows to at most about <tt>16 * (n + 1)</tt> bytes,
+ * <tt>25 * (n + 1)</tt> bytes in total. Usually it stays far smaller than the arrays.
+ *
+ * @author Joel
+ */
+public class QSufSortParallelImpl implements QSufSort {
+    // groups (or sum of groups) shorter than this are handled by a single task
+    private static final int GRAIN = 1 << 14;
+    private static final int INSERTION_SORT = 16;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Sort on the {@link ForkJoinPool#commonPool() common pool}.
+     */
+    public QSufSortParallelImpl() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool to run the sorting tasks
+     */
+    public QSufSortParallelImpl(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public IntBuffer sort(ByteBuffer buffer, int length) throws IOException {
+        return IntBuffer.wrap(new Sorter(buffer, length).sort());
+    }
+
+    private final class Sorter {
+        final int n;
+        final int[] I;
+        final int[] V;
+        // 1 where a new group starts after sorting a group
+        final byte[] heads;
+        int h;
+        // unsorted groups of the current step: start at [2 * g], length at [2 * g + 1]
+        int[] groups = new int[64];
+        // prefix sum of group lengths
+        long[] sizes = new long[33];
+        int ngroups;
+
+        Sorter(ByteBuffer old, int oldsize) {
+            n = oldsize;
+            I = new int[n + 1];
+            V = new int[n + 1];
+            heads = new byte[n + 1];
+
+            int[] buckets = new int[256];
+            int i;
+            for (i = 0; i < n; i++) buckets[old.get(i) & 0xFF]++;
+            for (i = 1; i < 256; i++) buckets[i] += buckets[i - 1];
+            for (i = 255; i > 0; i--) buckets[i] = buckets[i - 1];
+            buckets[0] = 0;
+
+            for (i = 0; i < n; i++) I[++buckets[old.get(i) & 0xFF]] = i;
+            I[0] = n;
+            for (i = 0; i < n; i++) V[i] = buckets[old.get(i) & 0xFF];
+            V[n] = 0;
+            for (i = 1; i < 256; i++) if (buckets[i] == buckets[i - 1] + 1) I[buckets[i]] = -1;
+            I[0] = -1;
+        }
+
+        int[] sort() {
+            for (h = 1; collectGroups(); h += h) {
+                pool.invoke(new GroupTask(0, ngroups, true));
+                pool.invoke(new GroupTask(0, ngroups, false));
+            }
+            pool.invoke(new InverseTask(0, n + 1));
+            return I;
+        }
+
+        // combine sorted groups and find the unsorted ones, false if there is none
+        private boolean collectGroups() {
+            int i, len = 0;
+            ngroups = 0;
+            for (i = 0; i < n + 1; ) {
+                if (I[i] < 0) {
+                    len -= I[i];
+                    i -= I[i];
+                } else {
+                    if (len != 0) I[i - len] = -len;
+                    len = V[I[i]] + 1 - i;
+                    addGroup(i, len);
+                    i += len;
+                    len = 0;
+                }
+            }
+            if (len != 0) I[i - len] = -len;
+            return ngroups != 0;
+        }
+
+        private void addGroup(int start, int len) {
+            if (2 * ngroups + 2 > groups.length) {
+                groups = Arrays.copyOf(groups, groups.length * 2);
+                sizes = Arrays.copyOf(sizes, groups.length / 2 + 1);
+            }
+            groups[2 * ngroups] = start;
+            groups[2 * ngroups + 1] = len;
+            sizes[ngroups + 1] = sizes[ngroups] + len;
+            ngroups++;
+        }
+
+        private int key(int i) {
+            return V[I[i] + h];
+        }
+
+        private void swap(int a, int b) {
+            int tmp = I[a];
+            I[a] = I[b];
+            I[b] = tmp;
+        }
+
+        // phase 1 of one group
+        private void sortGroup(int start, int len) {
+            if (len >= GRAIN) {
+                new SortTask(start, len).invoke();
+            } else {
+                quicksort(start, len);
+            }
+            int x = key(start);
+            heads[start] = 1;
+            for (int i = start + 1; i < start + len; i++) {
+                int y = key(i);
+                heads[i] = (byte) (y != x ? 1 : 0);
+                x = y;
+            }
+        }
+
+        // phase 2 of one group
+        private void renameGroup(int start, int len) {
+            int end = start + len;
+            for (int i = start; i < end; ) {
+                int j = i + 1;
+                while (j < end && heads[j] == 0) j++;
+                for (int k = i; k < j; k++) V[I[k]] = j - 1;
+                if (j == i + 1) I[i] = -1;
+                i = j;
+            }
+        }
+
+        // three-way partition around the median of three, returns {lt, gt}
+        private int[] partition(int start, int len) {
+            int a = key(start), b = key(start + len / 2), c = key(start + len - 1);
+            int x = a < b ? (b < c ? b : Math.max(a, c)) : (a < c ? a : Math.max(b, c));
+            int lt = start, i = start, gt = start + len;
+            while (i < gt) {
+                int y = key(i);
+                if (y < x) {
+                    swap(lt++, i++);
+                } else if (y > x) {
+                    swap(i, --gt);
+                } else {
+                    i++;
+                }
+            }
+            return new int[]{lt, gt};
+        }
+
+        private void quicksort(int start, int len) {
+            while (len > INSERTION_SORT) {
+                int[] p = partition(start, len);
+                int left = p[0] - start, right = start + len - p[1];
+                if (left < right) {
+                    quicksort(start, left);
+                    start = p[1];
+                    len = right;
+                } else {
+                    quicksort(p[1], right);
+                    len = left;
+                }
+            }
+            for (int i = start + 1; i < start + len; i++) {
+                for (int j = i; j > start && key(j - 1) > key(j); j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        // parallel quicksort of a large group
+        private final class SortTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int start, len;
+
+            SortTask(int start, int len) {
+                this.start = start;
+                this.len = len;
+            }
+
+            @Override
+            protected void compute() {
+                if (len < GRAIN) {
+                    quicksort(start, len);
+                    return;
+                }
+                int[] p = partition(start, len);
+                invokeAll(new SortTask(start, p[0] - start), new SortTask(p[1], start + len - p[1]));
+            }
+        }
+
+        // groups [from, to), sort or rename
+        private final class GroupTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int from, to;
+            final boolean sorting;
+
+            GroupTask(int from, int to, boolean sorting) {
+                this.from = from;
+                this.to = to;
+                this.sorting = sorting;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1 && sizes[to] - sizes[from] >= GRAIN) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new GroupTask(from, mid, sorting), new GroupTask(mid, to, sorting));
+                    return;
+                }
+                for (int g = from; g < to; g++) {
+                    if (sorting) {
+                        sortGroup(groups[2 * g], groups[2 * g + 1]);
+                    } else {
+                        renameGroup(groups[2 * g], groups[2 * g + 1]);
+                    }
+                }
+            }
+        }
+
+        // I[V[i]] = i
+        private final class InverseTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int from, to;
+
+            InverseTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from >= GRAIN * 4) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new InverseTask(from, mid), new InverseTask(mid, to));
+                    return;
+                }
+                for (int i = from; i < to; i++) I[V[i]] = i;
+            }
+        }
+    }
+}
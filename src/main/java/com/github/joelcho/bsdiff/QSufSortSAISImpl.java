@@ -0,0 +1,478 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Linear time suffix sorting by induced sorting (SA-IS).
+ * <p>
+ * Nong, Ge; Zhang, Sen; Chan, Wai Hong. Two Efficient Algorithms for Linear Time Suffix Array Construction.
+ * IEEE Transactions on Computers 60(10), 1471-1484 (2011).
+ * <p>
+ * The structure follows Yuta Mori's sais: the reduced problem is solved inside the suffix array itself,
+ * so besides the <tt>4 * (n + 1)</tt> bytes of the result only a few bucket arrays are needed.
+ * There is no <tt>V</tt> array as in {@link QSufSortByteBufferImpl}.
+ * <p>
+ * The result is identical to the other {@link QSufSort} implementations: <tt>I[0]</tt> is the empty suffix,
+ * followed by the sorted suffixes of the input.
+ *
+ * @author Joel
+ */
+public class QSufSortSAISImpl implements QSufSort {
+    private static final int MINBUCKETSIZE = 256;
+
+    private final BufferAllocator allocator;
+    // backing buffers of the suffix arrays not released yet
+    private final Map<IntBuffer, ByteBuffer> sorted = new IdentityHashMap<>();
+
+    /**
+     * Creates a sorter that keeps the suffix array in JVM memory.
+     */
+    public QSufSortSAISImpl() {
+        this.allocator = null;
+    }
+
+    /**
+     * Creates a sorter that keeps the suffix array in memory allocated by an {@link BufferAllocator}.
+     *
+     * @param allocator suffix array allocator
+     */
+    public QSufSortSAISImpl(BufferAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @Override
+    public IntBuffer sort(ByteBuffer buffer, int length) throws IOException {
+        IntBuffer I;
+        if (allocator == null) {
+            I = IntBuffer.wrap(new int[length + 1]);
+        } else {
+            ByteBuffer ib = allocator.allocate((length + 1) * 4);
+            I = ib.asIntBuffer();
+            synchronized (sorted) {
+                sorted.put(I, ib);
+            }
+        }
+        I.put(0, length);
+        if (length == 1) {
+            I.put(1, 0);
+        } else if (length > 1) {
+            I.position(1);
+            IntBuffer SA = I.slice();
+            I.position(0);
+            sais(new ByteText(buffer), SA, 0, length, 256);
+        }
+        return I;
+    }
+
+    @Override
+    public void release(IntBuffer I) throws IOException {
+        ByteBuffer ib;
+        synchronized (sorted) {
+            ib = sorted.remove(I);
+        }
+        if (ib != null) {
+            allocator.release(ib);
+        }
+    }
+
+    // the text to sort, read only
+    private interface Text {
+        int get(int i);
+    }
+
+    // the text of a recursion level, and the work arrays
+    private interface IntArray extends Text {
+        void set(int i, int val);
+    }
+
+    private static final class ByteText implements Text {
+        private final ByteBuffer buf;
+
+        ByteText(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int get(int i) {
+            return buf.get(i) & 0xFF;
+        }
+    }
+
+    private static final class BufferArray implements IntArray {
+        private final IntBuffer buf;
+        private final int off;
+
+        BufferArray(IntBuffer buf, int off) {
+            this.buf = buf;
+            this.off = off;
+        }
+
+        @Override
+        public int get(int i) {
+            return buf.get(off + i);
+        }
+
+        @Override
+        public void set(int i, int val) {
+            buf.put(off + i, val);
+        }
+    }
+
+    private static final class HeapArray implements IntArray {
+        private final int[] arr;
+
+        HeapArray(int size) {
+            this.arr = new int[size];
+        }
+
+        @Override
+        public int get(int i) {
+            return arr[i];
+        }
+
+        @Override
+        public void set(int i, int val) {
+            arr[i] = val;
+        }
+    }
+
+    private static void getCounts(Text T, IntArray C, int n, int k) {
+        int i;
+        for (i = 0; i < k; i++) C.set(i, 0);
+        for (i = 0; i < n; i++) {
+            int c = T.get(i);
+            C.set(c, C.get(c) + 1);
+        }
+    }
+
+    private static void getBuckets(IntArray C, IntArray B, int k, boolean end) {
+        int i, sum = 0;
+        if (end) {
+            for (i = 0; i < k; i++) {
+                sum += C.get(i);
+                B.set(i, sum);
+            }
+        } else {
+            for (i = 0; i < k; i++) {
+                sum += C.get(i);
+                B.set(i, sum - C.get(i));
+            }
+        }
+    }
+
+    // sort all type LMS suffixes
+    private static void LMSsort(Text T, IntBuffer SA, IntArray C, IntArray B, int n, int k) {
+        int b, i, j;
+        int c0, c1;
+
+        // compute SAl
+        if (C == B) getCounts(T, C, n, k);
+        getBuckets(C, B, k, false); // find starts of buckets
+        j = n - 1;
+        b = B.get(c1 = T.get(j));
+        --j;
+        SA.put(b++, (T.get(j) < c1) ? ~j : j);
+        for (i = 0; i < n; i++) {
+            if (0 < (j = SA.get(i))) {
+                if ((c0 = T.get(j)) != c1) {
+                    B.set(c1, b);
+                    b = B.get(c1 = c0);
+                }
+                --j;
+                SA.put(b++, (T.get(j) < c1) ? ~j : j);
+                SA.put(i, 0);
+            } else if (j < 0) {
+                SA.put(i, ~j);
+            }
+        }
+
+        // compute SAs
+        if (C == B) getCounts(T, C, n, k);
+        getBuckets(C, B, k, true); // find ends of buckets
+        for (i = n - 1, b = B.get(c1 = 0); 0 <= i; i--) {
+            if (0 < (j = SA.get(i))) {
+                if ((c0 = T.get(j)) != c1) {
+                    B.set(c1, b);
+                    b = B.get(c1 = c0);
+                }
+                --j;
+                SA.put(--b, (T.get(j) > c1) ? ~(j + 1) : j);
+                SA.put(i, 0);
+            }
+        }
+    }
+
+    private static int LMSpostproc(Text T, IntBuffer SA, int n, int m) {
+        int i, j, p, q, plen, qlen, name;
+        int c0, c1;
+        boolean diff;
+
+        // compact all the sorted substrings into the first m items of SA
+        // 2*m must be not larger than n (provable)
+        for (i = 0; (p = SA.get(i)) < 0; i++) SA.put(i, ~p);
+        if (i < m) {
+            for (j = i, ++i; ; i++) {
+                if ((p = SA.get(i)) < 0) {
+                    SA.put(j++, ~p);
+                    SA.put(i, 0);
+                    if (j == m) break;
+                }
+            }
+        }
+
+        // store the length of all substrings
+        i = n - 1;
+        j = n - 1;
+        c0 = T.get(n - 1);
+        do {
+            c1 = c0;
+        } while ((0 <= --i) && ((c0 = T.get(i)) >= c1));
+        while (0 <= i) {
+            do {
+                c1 = c0;
+            } while ((0 <= --i) && ((c0 = T.get(i)) <= c1));
+            if (0 <= i) {
+                SA.put(m + ((i + 1) >> 1), j - i);
+                j = i + 1;
+                do {
+                    c1 = c0;
+                } while ((0 <= --i) && ((c0 = T.get(i)) >= c1));
+            }
+        }
+
+        // find the lexicographic names of all substrings
+        for (i = 0, name = 0, q = n, qlen = 0; i < m; i++) {
+            p = SA.get(i);
+            plen = SA.get(m + (p >> 1));
+            diff = true;
+            if ((plen == qlen) && ((q + plen) < n)) {
+                for (j = 0; (j < plen) && (T.get(p + j) == T.get(q + j)); j++) ;
+                if (j == plen) diff = false;
+            }
+            if (diff) {
+                ++name;
+                q = p;
+                qlen = plen;
+            }
+            SA.put(m + (p >> 1), name);
+        }
+
+        return name;
+    }
+
+    // compute SA from the sorted LMS suffixes
+    private static void induceSA(Text T, IntBuffer SA, IntArray C, IntArray B, int n, int k) {
+        int b, i, j;
+        int c0, c1;
+
+        // compute SAl
+        if (C == B) getCounts(T, C, n, k);
+        getBuckets(C, B, k, false); // find starts of buckets
+        j = n - 1;
+        b = B.get(c1 = T.get(j));
+        SA.put(b++, ((0 < j) && (T.get(j - 1) < c1)) ? ~j : j);
+        for (i = 0; i < n; i++) {
+            j = SA.get(i);
+            SA.put(i, ~j);
+            if (0 < j) {
+                if ((c0 = T.get(--j)) != c1) {
+                    B.set(c1, b);
+                    b = B.get(c1 = c0);
+                }
+                SA.put(b++, ((0 < j) && (T.get(j - 1) < c1)) ? ~j : j);
+            }
+        }
+
+        // compute SAs
+        if (C == B) getCounts(T, C, n, k);
+        getBuckets(C, B, k, true); // find ends of buckets
+        for (i = n - 1, b = B.get(c1 = 0); 0 <= i; i--) {
+            if (0 < (j = SA.get(i))) {
+                if ((c0 = T.get(--j)) != c1) {
+                    B.set(c1, b);
+                    b = B.get(c1 = c0);
+                }
+                SA.put(--b, ((j == 0) || (T.get(j - 1) > c1)) ? ~j : j);
+            } else {
+                SA.put(i, ~j);
+            }
+        }
+    }
+
+    /**
+     * Find the suffix array SA of T[0..n-1] in {0..k-1}^n.
+     * <p>
+     * <tt>fs</tt> is the number of free ints after <tt>SA[n-1]</tt> that can be used as work space.
+     */
+    private static void sais(Text T, IntBuffer SA, int fs, int n, int k) {
+        IntArray C, B, RA;
+        int i, j, b, m, p, q, name, newfs;
+        int c0, c1;
+        int flags;
+
+        if (k <= MINBUCKETSIZE) {
+            C = new HeapArray(k);
+            if (k <= fs) {
+                B = new BufferArray(SA, n + fs - k);
+                flags = 1;
+            } else {
+                B = new HeapArray(k);
+                flags = 3;
+            }
+        } else if (k <= fs) {
+            C = new BufferArray(SA, n + fs - k);
+            if (k <= (fs - k)) {
+                B = new BufferArray(SA, n + fs - k * 2);
+                flags = 0;
+            } else if (k <= (MINBUCKETSIZE * 4)) {
+                B = new HeapArray(k);
+                flags = 2;
+            } else {
+                B = C;
+                flags = 8;
+            }
+        } else {
+            C = B = new HeapArray(k);
+            flags = 4 | 8;
+        }
+
+        // stage 1: reduce the problem by at least 1/2
+        // sort all the LMS-substrings
+        getCounts(T, C, n, k);
+        getBuckets(C, B, k, true); // find ends of buckets
+        for (i = 0; i < n; i++) SA.put(i, 0);
+        b = -1;
+        i = n - 1;
+        j = n;
+        m = 0;
+        c0 = T.get(n - 1);
+        do {
+            c1 = c0;
+        } while ((0 <= --i) && ((c0 = T.get(i)) >= c1));
+        while (0 <= i) {
+            do {
+                c1 = c0;
+            } while ((0 <= --i) && ((c0 = T.get(i)) <= c1));
+            if (0 <= i) {
+                if (0 <= b) SA.put(b, j);
+                b = B.get(c1) - 1;
+                B.set(c1, b);
+                j = i;
+                ++m;
+                do {
+                    c1 = c0;
+                } while ((0 <= --i) && ((c0 = T.get(i)) >= c1));
+            }
+        }
+        if (1 < m) {
+            LMSsort(T, SA, C, B, n, k);
+            name = LMSpostproc(T, SA, n, m);
+        } else if (m == 1) {
+            SA.put(b, j + 1);
+            name = 1;
+        } else {
+            name = 0;
+        }
+
+        // stage 2: solve the reduced problem
+        // recurse if names are not yet unique
+        if (name < m) {
+            if ((flags & 4) != 0) {
+                C = null;
+                B = null;
+            }
+            if ((flags & 2) != 0) B = null;
+            newfs = (n + fs) - (m * 2);
+            if ((flags & (1 | 4 | 8)) == 0) {
+                if ((k + name) <= newfs) {
+                    newfs -= k;
+                } else {
+                    flags |= 8;
+                }
+            }
+            for (i = m + (n >> 1) - 1, j = m * 2 + newfs - 1; m <= i; i--) {
+                if (SA.get(i) != 0) SA.put(j--, SA.get(i) - 1);
+            }
+            RA = new BufferArray(SA, m + newfs);
+            sais(RA, SA, newfs, m, name);
+
+            i = n - 1;
+            j = m * 2 - 1;
+            c0 = T.get(n - 1);
+            do {
+                c1 = c0;
+            } while ((0 <= --i) && ((c0 = T.get(i)) >= c1));
+            while (0 <= i) {
+                do {
+                    c1 = c0;
+                } while ((0 <= --i) && ((c0 = T.get(i)) <= c1));
+                if (0 <= i) {
+                    SA.put(j--, i + 1);
+                    do {
+                        c1 = c0;
+                    } while ((0 <= --i) && ((c0 = T.get(i)) >= c1));
+                }
+            }
+
+            for (i = 0; i < m; i++) SA.put(i, SA.get(m + SA.get(i)));
+            if ((flags & 4) != 0) C = B = new HeapArray(k);
+            if ((flags & 2) != 0) B = new HeapArray(k);
+        }
+
+        // stage 3: induce the result for the original problem
+        if ((flags & 8) != 0) getCounts(T, C, n, k);
+        // put all left-most S characters into their buckets
+        if (1 < m) {
+            getBuckets(C, B, k, true); // find ends of buckets
+            i = m - 1;
+            j = n;
+            p = SA.get(m - 1);
+            c1 = T.get(p);
+            do {
+                q = B.get(c0 = c1);
+                while (q < j) SA.put(--j, 0);
+                do {
+                    SA.put(--j, p);
+                    if (--i < 0) break;
+                    p = SA.get(i);
+                } while ((c1 = T.get(p)) == c0);
+            } while (0 <= i);
+            while (0 < j) SA.put(--j, 0);
+        }
+        induceSA(T, SA, C, B, n, k);
+    }
+}
@@ -0,0 +1,85 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression of the ctrl, diff and extra blocks of a patch.
+ * <p>
+ * The codec is recorded by the magic at the beginning of the header, {@link BSPatch} detects it.
+ * Only {@link #BZIP2} patches can be applied by the original bspatch.
+ *
+ * @author Joel
+ */
+public interface SectionCodec {
+    /**
+     * bzip2 level 9, the BSDIFF40 format, smallest patches and slowest apply.
+     */
+    SectionCodec BZIP2 = new SectionCodecs.BZip2();
+    /**
+     * deflate level 9 in gzip members, much faster apply than bzip2.
+     */
+    SectionCodec DEFLATE = new SectionCodecs.Deflate();
+    /**
+     * LZ4 frame format, fastest apply of the compressed ones and biggest patches.
+     */
+    SectionCodec LZ4 = new SectionCodecs.LZ4();
+    /**
+     * No compression, for patches that are compressed as a whole by the transport.
+     */
+    SectionCodec RAW = new SectionCodecs.Raw();
+
+    /**
+     * @return the 8 bytes magic of the patch header
+     */
+    byte[] getMagic();
+
+    /**
+     * Compress a block into out. Closing the returned stream finishes the block and closes out.
+     * <p>
+     * Concatenated compressed blocks must be read back as one block, parallel compression relies on it.
+     *
+     * @param out compressed block destination
+     * @return the compressor
+     * @throws IOException If some other I/O error occurs
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * @param in compressed block
+     * @return the decompressor
+     * @throws IOException If some other I/O error occurs
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,220 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The built-in {@link SectionCodec}s.
+ *
+ * @author Joel
+ */
+final class SectionCodecs {
+    private static final SectionCodec[] CODECS = {
+            SectionCodec.BZIP2, SectionCodec.DEFLATE, SectionCodec.LZ4, SectionCodec.RAW
+    };
+
+    private SectionCodecs() {
+    }
+
+    /**
+     * @param header patch header
+     * @return the codec of the header magic, or null if it is unknown
+     */
+    static SectionCodec forHeader(byte[] header) {
+        for (SectionCodec codec : CODECS) {
+            byte[] magic = codec.getMagic();
+            if (Arrays.equals(magic, Arrays.copyOf(header, magic.length))) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find where the concatenated streams of a block start, like the pieces of {@link ParallelCompressor},
+     * so they can be decompressed concurrently.
+     * <p>
+     * The starts are found by the stream magic of {@link SectionCodec#BZIP2} and {@link SectionCodec#LZ4},
+     * compressed data may look like a magic. The caller must check the decompressed lengths and
+     * fall back to the whole block.
+     *
+     * @param codec   the block codec
+     * @param section the block
+     * @return offsets of the streams in the block, the first one is 0
+     */
+    static int[] streamStarts(SectionCodec codec, ByteBuffer section) {
+        final byte[] magic;
+        if (codec == SectionCodec.BZIP2) {
+            // stream header of any level, then the magic of the first block
+            magic = new byte[]{'B', 'Z', 'h', 0, 0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+        } else if (codec == SectionCodec.LZ4) {
+            magic = new byte[]{0x04, 0x22, 0x4D, 0x18};
+        } else {
+            return new int[]{0};
+        }
+        int[] starts = new int[16];
+        int count = 1;
+        final int end = section.limit() - magic.length;
+        for (int i = 1; i <= end; i++) {
+            if (section.get(i) != magic[0] || !matches(section, i, magic)) {
+                continue;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = i;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    private static boolean matches(ByteBuffer section, int pos, byte[] magic) {
+        for (int k = 0; k < magic.length; k++) {
+            byte b = section.get(pos + k);
+            // bzip2 level digit
+            if (magic[k] == 0 ? b < '1' || b > '9' : b != magic[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static final class BZip2 implements SectionCodec {
+        @Override
+        public byte[] getMagic() {
+            return BSDiff.VERSION.clone();
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new BZip2CompressorOutputStream(out, 9);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new BZip2CompressorInputStream(in, true);
+        }
+    }
+
+    static final class Deflate implements SectionCodec {
+        @Override
+        public byte[] getMagic() {
+            return "BSDIFFDF".getBytes();
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            // reads concatenated members, see MemberSource
+            return new GZIPInputStream(new MemberSource(in), 8192);
+        }
+    }
+
+    /**
+     * GZIPInputStream only reads the member after the current one when its source reports
+     * {@link InputStream#available()} bytes, or when enough of them are left in its own buffer.
+     * Most streams report 0, so this one peeks a byte instead, and reports 0 only at the end.
+     */
+    private static final class MemberSource extends PushbackInputStream {
+        MemberSource(InputStream in) {
+            super(in, 1);
+        }
+
+        @Override
+        public int available() throws IOException {
+            int n = super.available();
+            if (n > 0) {
+                return n;
+            }
+            int b = read();
+            if (b < 0) {
+                return 0;
+            }
+            unread(b);
+            return 1;
+        }
+    }
+
+    static final class LZ4 implements SectionCodec {
+        @Override
+        public byte[] getMagic() {
+            return "BSDIFFL4".getBytes();
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new FramedLZ4CompressorOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new FramedLZ4CompressorInputStream(in, true);
+        }
+    }
+
+    static final class Raw implements SectionCodec {
+        @Override
+        public byte[] getMagic() {
+            return "BSDIFFRW".getBytes();
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A source read by positional reads, without a shared position, like the old file and the patch
+ * of {@link BSPatch#patch(SeekableInput, SeekableInput, java.io.OutputStream)}.
+ *
+ * @author Joel
+ */
+public interface SeekableInput {
+    /**
+     * @return the length of the source
+     * @throws IOException If some other I/O error occurs
+     */
+    long size() throws IOException;
+
+    /**
+     * Reads up to len bytes at pos.
+     *
+     * @param pos position of the first byte
+     * @param b   destination
+     * @param off offset in b
+     * @param len max count of bytes to read
+     * @return count of bytes read, or -1 if pos is at or beyond the end
+     * @throws IOException If some other I/O error occurs
+     */
+    int read(long pos, byte[] b, int off, int len) throws IOException;
+
+    /**
+     * @param channel a file channel, only read by {@link FileChannel#read(ByteBuffer, long)}
+     * @return the source reading the channel
+     */
+    static SeekableInput of(FileChannel channel) {
+        return new SeekableInput() {
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public int read(long pos, byte[] b, int off, int len) throws IOException {
+                return channel.read(ByteBuffer.wrap(b, off, len), pos);
+            }
+        };
+    }
+
+    /**
+     * @param buffer the buffer, from 0 to its limit
+     * @return the source reading the buffer
+     */
+    static SeekableInput of(ByteBuffer buffer) {
+        return of(LargeByteBuffer.wrap(buffer));
+    }
+
+    /**
+     * @param buffer the buffer
+     * @return the source reading the buffer
+     */
+    static SeekableInput of(LargeByteBuffer buffer) {
+        return new SeekableInput() {
+            @Override
+            public long size() {
+                return buffer.size();
+            }
+
+            @Override
+            public int read(long pos, byte[] b, int off, int len) {
+                if (pos >= buffer.size()) {
+                    return -1;
+                }
+                len = (int) Math.min(len, buffer.size() - pos);
+                buffer.get(pos, b, off, len);
+                return len;
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.nio.IntBuffer;
+
+/**
+ * Read access to the suffix array of old file, <tt>n + 1</tt> entries from <tt>0</tt> to <tt>n</tt>.
+ * The scan and {@link LargeBSDiff#search} read through it, concurrent reads are safe.
+ *
+ * @author Joel
+ * @see PackedSuffixArray
+ */
+interface SuffixArray {
+    int get(int i);
+
+    /**
+     * @param I a suffix array as returned by {@link QSufSort#sort(java.nio.ByteBuffer, int)}
+     * @return the suffix array reading I, 32 bits per entry
+     */
+    static SuffixArray of(IntBuffer I) {
+        return new Ints(I.duplicate());
+    }
+
+    final class Ints implements SuffixArray {
+        private final IntBuffer I;
+
+        private Ints(IntBuffer I) {
+            this.I = I;
+        }
+
+        @Override
+        public int get(int i) {
+            return I.get(i);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The suffix array of an old file, built once and reused by many diffs.
+ * <p>
+ * Header is
+ * 0	8	"BSDIFFSA"
+ * 8	8	format version
+ * 16	8	length of old file
+ * 24	32	SHA-256 of old file
+ * <p>
+ * File is
+ * 0	56	Header
+ * 56	??	suffix array, (length of old file + 1) big-endian int32
+ *
+ * @author Joel
+ * @see BSDiff#diff(ByteBuffer, ByteBuffer, SeekableOutputStream, BufferAllocator, SuffixArrayIndex)
+ */
+public class SuffixArrayIndex {
+    static final byte[] MAGIC = "BSDIFFSA".getBytes();
+    static final long FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 56;
+
+    private final int oldsize;
+    private final byte[] checksum;
+    private final IntBuffer I;
+
+    private SuffixArrayIndex(int oldsize, byte[] checksum, IntBuffer I) {
+        this.oldsize = oldsize;
+        this.checksum = checksum;
+        this.I = I;
+    }
+
+    /**
+     * Sort the old file.
+     *
+     * @param old      old file
+     * @param qSufSort the QSufSort implementation
+     * @return the index of old file
+     * @throws IOException If some other I/O error occurs
+     */
+    public static SuffixArrayIndex build(ByteBuffer old, QSufSort qSufSort) throws IOException {
+        final int oldsize = old.limit();
+        return new SuffixArrayIndex(oldsize, checksum(old), qSufSort.sort(old, oldsize));
+    }
+
+    /**
+     * Map an index file saved by {@link #save(File)}.
+     *
+     * @param file index file
+     * @param old  the old file which the index was built from
+     * @return the index of old file
+     * @throws IOException If the index is not a valid index of old, or some other I/O error occurs
+     */
+    public static SuffixArrayIndex load(File file, ByteBuffer old) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("corrupt index");
+                }
+            }
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("corrupt index");
+            }
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            long version = header.getLong();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported index version " + version);
+            }
+            long size = header.getLong();
+            byte[] sum = new byte[32];
+            header.get(sum);
+            if (size != old.limit() || !Arrays.equals(sum, checksum(old))) {
+                throw new IOException("index does not match the old file");
+            }
+            long salen = (size + 1) * 4;
+            if (channel.size() != HEADER_SIZE + salen) {
+                throw new IOException("corrupt index");
+            }
+            IntBuffer I = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, salen).asIntBuffer();
+            return new SuffixArrayIndex((int) size, sum, I);
+        }
+    }
+
+    /**
+     * Save this index to file.
+     *
+     * @param file index file
+     * @throws IOException If some other I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            FileChannel channel = fos.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(FORMAT_VERSION);
+            header.putLong(oldsize);
+            header.put(checksum);
+            header.flip();
+            writeFully(channel, header);
+
+            final int tempBufferSize = 10240;
+            ByteBuffer temp = ByteBuffer.allocate(tempBufferSize * 4);
+            IntBuffer itemp = temp.asIntBuffer();
+            IntBuffer src = getSuffixArray();
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), tempBufferSize);
+                itemp.clear();
+                for (int i = 0; i < n; i++) {
+                    itemp.put(src.get());
+                }
+                temp.position(0).limit(n * 4);
+                writeFully(channel, temp);
+            }
+        }
+    }
+
+    /**
+     * @return the length of old file
+     */
+    public int getOldSize() {
+        return oldsize;
+    }
+
+    /**
+     * @return the SHA-256 of old file
+     */
+    public byte[] getChecksum() {
+        return checksum.clone();
+    }
+
+    /**
+     * @return the suffix array of old file, it must not be modified
+     */
+    public IntBuffer getSuffixArray() {
+        IntBuffer dup = I.duplicate();
+        dup.position(0).limit(oldsize + 1);
+        return dup;
+    }
+
+    static byte[] checksum(ByteBuffer old) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer dup = old.duplicate();
+        dup.position(0);
+        md.update(dup);
+        return md.digest();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * An allocator that also gives temp files, {@link BlockSpill} spills to them.
+ *
+ * @author Joel
+ */
+interface TempFileSource {
+    /**
+     * Temp files in <tt>java.io.tmpdir</tt>, for allocators that give none.
+     */
+    TempFileSource DEFAULT = new Default();
+
+    /**
+     * Create an empty temp file, it is closed and deleted with the allocator.
+     *
+     * @param prefix temp file name prefix
+     * @return the temp file opened for read and write
+     * @throws IOException If some other I/O error occurs
+     */
+    RandomAccessFile createTempFile(String prefix) throws IOException;
+
+    /**
+     * Close and delete a temp file before the allocator is closed.
+     *
+     * @param file the file returned by {@link #createTempFile(String)}
+     * @throws IOException If some other I/O error occurs
+     */
+    void deleteTempFile(RandomAccessFile file) throws IOException;
+
+    final class Default implements TempFileSource {
+        private Default() {
+        }
+
+        /**
+         * Nothing closes this source, so the file is deleted as soon as it is open,
+         * or when the JVM exits where an open file cannot be deleted.
+         */
+        @Override
+        public RandomAccessFile createTempFile(String prefix) throws IOException {
+            final File tempFile = File.createTempFile(prefix, null);
+            RandomAccessFile raf;
+            try {
+                raf = new RandomAccessFile(tempFile, "rw");
+            } catch (IOException e) {
+                final boolean delete = tempFile.delete();
+                assert delete;
+                throw e;
+            }
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+            return raf;
+        }
+
+        @Override
+        public void deleteTempFile(RandomAccessFile file) throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Bounded memory diff: the new file is cut into windows of <tt>windowSize / 2</tt> bytes, each one is diffed
+ * against a <tt>windowSize</tt> bytes window of the old file, and only that old window is suffix sorted.
+ * <p>
+ * The old window of a new window is found by anchor hashes: the old file is sampled every few bytes into
+ * a hash table, every position of the new window is looked up, and the old window is placed where it covers
+ * the most hits. Without enough hits the offset of the previous window is kept.
+ * <p>
+ * The tuples of all windows form one continuous BSDIFF40 control stream, seeks are recomputed across windows.
+ * Matches cannot cross windows or come from outside the old window, so patches are bigger than full ones.
+ *
+ * @author Joel
+ * @see BSDiff#diff(LargeByteBuffer, LargeByteBuffer, SeekableOutputStream, BufferAllocator, QSufSort, int)
+ */
+final class WindowedDiff {
+    // an old window needs at least this many hits
+    static final int MIN_VOTES = 2;
+
+    private final LargeByteBuffer old;
+    private final LargeByteBuffer new0;
+    private final QSufSort qSufSort;
+    private final int windowSize;
+    private final AnchorTable anchors;
+
+    private WindowedDiff(LargeByteBuffer old, LargeByteBuffer new0, QSufSort qSufSort, int windowSize) {
+        this.old = old;
+        this.new0 = new0;
+        this.qSufSort = qSufSort;
+        this.windowSize = windowSize;
+        // as many anchors as one old window holds at the densest step, 0.75 * windowSize bytes of table
+        this.anchors = AnchorTable.build(old,
+                Math.max(1, Math.min(AnchorTable.MAX_ANCHORS, windowSize / AnchorTable.MIN_ANCHOR_STEP)));
+    }
+
+    static void diff(LargeByteBuffer old, LargeByteBuffer new0, SeekableOutputStream out, BufferAllocator ba,
+                     QSufSort qSufSort, int windowSize) throws IOException {
+        if (windowSize < 2 * AnchorTable.ANCHOR_LENGTH) {
+            throw new IllegalArgumentException("invalid window size " + windowSize);
+        }
+        PatchWriter writer = new PatchWriter(old, new0, out, ba, Compression.SEQUENTIAL);
+        try {
+            new WindowedDiff(old, new0, qSufSort, windowSize).scan(ba, writer);
+            writer.finish();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    private void scan(BufferAllocator ba, PatchWriter writer) throws IOException {
+        final long oldsize = old.size();
+        final long newsize = new0.size();
+        final int newWindow = windowSize / 2;
+        final ByteBuffer ow = ba.allocate((int) Math.min(windowSize, Math.max(oldsize, 1)));
+        final ByteBuffer nw = ba.allocate((int) Math.min(newWindow, Math.max(newsize, 1)));
+        try {
+            scan(ow, nw, writer);
+        } finally {
+            ba.release(nw);
+            ba.release(ow);
+        }
+    }
+
+    private void scan(ByteBuffer ow, ByteBuffer nw, PatchWriter writer) throws IOException {
+        final long oldsize = old.size();
+        final long newsize = new0.size();
+        final int newWindow = windowSize / 2;
+
+        Reseek sink = new Reseek(writer);
+        long offset = -(windowSize - newWindow) / 2;
+        for (long nstart = 0; nstart < newsize; nstart += newWindow) {
+            int nlen = (int) Math.min(newWindow, newsize - nstart);
+            copy(new0, nstart, nlen, nw);
+
+            long ostart = locate(nw, nlen, nstart, offset);
+            offset = ostart - nstart;
+            ostart = Math.max(0, Math.min(ostart, oldsize - windowSize));
+            int olen = (int) Math.min(windowSize, oldsize - ostart);
+            copy(old, ostart, olen, ow);
+
+            IntBuffer I = qSufSort.sort(ow, olen);
+            try {
+                long lastpos = sink.nextOldPos() - ostart;
+                sink.window(nstart, ostart);
+                BSDiff.scan(ow, SuffixArray.of(I), null, nw, 0, nlen, lastpos >= 0 && lastpos <= olen ? (int) lastpos : 0, BSDiff.END, sink);
+            } finally {
+                // the next window sorts into the same memory when the allocator pools it
+                qSufSort.release(I);
+            }
+        }
+        sink.flush();
+    }
+
+    private static void copy(LargeByteBuffer src, long start, int len, ByteBuffer dst) {
+        byte[] temp = new byte[Math.min(len, 1 << 16)];
+        dst.clear();
+        for (int done = 0, n; done < len; done += n) {
+            n = Math.min(temp.length, len - done);
+            src.get(start + done, temp, 0, n);
+            dst.put(temp, 0, n);
+        }
+        dst.flip();
+    }
+
+    // Start of the old window covering the most anchors of the new window, or the one at the last offset
+    private long locate(ByteBuffer nw, int nlen, long nstart, long offset) {
+        if (nlen < AnchorTable.ANCHOR_LENGTH || anchors == null) {
+            return nstart + offset;
+        }
+        long[] hits = new long[64];
+        int count = 0;
+        int h = 0;
+        for (int i = 0; i < nlen; i++) {
+            h = AnchorTable.roll(h, nw.get(i), i >= AnchorTable.ANCHOR_LENGTH ? nw.get(i - AnchorTable.ANCHOR_LENGTH) : 0);
+            if (i >= AnchorTable.ANCHOR_LENGTH - 1) {
+                long oldpos = anchors.find(h);
+                if (oldpos >= 0) {
+                    if (count == hits.length) {
+                        hits = Arrays.copyOf(hits, count * 2);
+                    }
+                    hits[count++] = oldpos;
+                }
+            }
+        }
+        Arrays.sort(hits, 0, count);
+
+        // the densest windowSize range of hits
+        int most = MIN_VOTES - 1, first = -1, last = -1;
+        for (int i = 0, j = 0; j < count; j++) {
+            while (hits[j] - hits[i] >= windowSize) i++;
+            if (j - i + 1 > most) {
+                most = j - i + 1;
+                first = i;
+                last = j;
+            }
+        }
+        if (first < 0) {
+            return nstart + offset;
+        }
+        return hits[first] - (windowSize - (hits[last] - hits[first])) / 2;
+    }
+
+    // Translates the window tuples to file positions, the seek of a tuple is known when the next one comes
+    static final class Reseek implements ControlSink {
+        private final PatchWriter writer;
+        private long nstart, ostart;
+        private boolean pending;
+        private long newpos, oldpos, difflen, extralen;
+
+        Reseek(PatchWriter writer) {
+            this.writer = writer;
+        }
+
+        void window(long nstart, long ostart) {
+            this.nstart = nstart;
+            this.ostart = ostart;
+        }
+
+        // old position after the pending tuple without seek
+        long nextOldPos() {
+            return pending ? oldpos + difflen : 0;
+        }
+
+        @Override
+        public void accept(long newpos, long oldpos, long difflen, long extralen, long seek) throws IOException {
+            long o = ostart + oldpos;
+            if (pending) {
+                writer.accept(this.newpos, this.oldpos, this.difflen, this.extralen, o - (this.oldpos + this.difflen));
+            } else if (o != 0) {
+                // patching starts at old position 0
+                writer.accept(0, 0, 0, 0, o);
+            }
+            this.pending = true;
+            this.newpos = nstart + newpos;
+            this.oldpos = o;
+            this.difflen = difflen;
+            this.extralen = extralen;
+        }
+
+        void flush() throws IOException {
+            if (pending) {
+                writer.accept(newpos, oldpos, difflen, extralen, 0);
+                pending = false;
+            }
+        }
+    }
+}
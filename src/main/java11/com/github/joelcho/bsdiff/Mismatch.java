@@ -0,0 +1,68 @@
+/*-
+ * Copyright 2021 joelcho
+ * All rights reserved
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted providing that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds the first differing byte of two buffers.
+ * <p>
+ * JDK 11+ version, {@link Arrays#mismatch(byte[], int, int, byte[], int, int)} and
+ * {@link ByteBuffer#mismatch(ByteBuffer)} are intrinsified by the JIT.
+ *
+ * @author Joel
+ */
+final class Mismatch {
+    private Mismatch() {
+    }
+
+    static int mismatch(ByteBuffer a, int apos, ByteBuffer b, int bpos, int from, int len) {
+        if (len - from < 16) {
+            int i = from;
+            while (i < len && a.get(apos + i) == b.get(bpos + i)) {
+                i++;
+            }
+            return i;
+        }
+        int m;
+        if (a.hasArray() && b.hasArray()) {
+            int aoff = a.arrayOffset() + apos, boff = b.arrayOffset() + bpos;
+            m = Arrays.mismatch(a.array(), aoff + from, aoff + len, b.array(), boff + from, boff + len);
+        } else {
+            ByteBuffer x = a.duplicate(), y = b.duplicate();
+            x.limit(apos + len).position(apos + from);
+            y.limit(bpos + len).position(bpos + from);
+            m = x.mismatch(y);
+        }
+        return m < 0 ? len : from + m;
+    }
+}
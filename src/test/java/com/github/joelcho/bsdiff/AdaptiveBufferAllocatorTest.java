@@ -0,0 +1,115 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class AdaptiveBufferAllocatorTest {
+
+    @Test
+    public void tiersAreUsedInBudgetOrder() throws IOException {
+        try (AdaptiveBufferAllocator ba = new AdaptiveBufferAllocator(4096, 1 << 20,
+                System.getProperty("java.io.tmpdir"))) {
+            assertFalse(ba.allocate(4096).isDirect());
+            assertEquals(4096, ba.getHeapUsed());
+            // the heap budget is used up
+            assertTrue(ba.allocate(1 << 20).isDirect());
+            assertEquals(1 << 20, ba.getDirectUsed());
+            // both are used up
+            ByteBuffer file = ba.allocate(8192);
+            assertEquals(8192, file.capacity());
+            assertEquals(8192, ba.getFileUsed());
+            assertEquals(0, ba.allocate(0).limit());
+            assertEquals(4096, ba.getHeapUsed());
+            assertEquals(1 << 20, ba.getDirectUsed());
+        }
+    }
+
+    @Test
+    public void releaseGivesBackTheTierBudget() throws IOException {
+        try (AdaptiveBufferAllocator ba = new AdaptiveBufferAllocator(4096, 1 << 20,
+                System.getProperty("java.io.tmpdir"))) {
+            ByteBuffer heap = ba.allocate(4096);
+            assertFalse(heap.isDirect());
+            for (int i = 0; i < 3; i++) {
+                // a released direct buffer leaves room for the next one
+                ByteBuffer direct = ba.allocate(1 << 20);
+                assertTrue(direct.isDirect());
+                assertEquals(1 << 20, ba.getDirectUsed());
+                assertEquals(0, ba.getFileUsed());
+                ba.release(direct);
+                assertEquals(0, ba.getDirectUsed());
+            }
+
+            ByteBuffer direct = ba.allocate(1 << 20);
+            ByteBuffer file = ba.allocate(8192);
+            assertEquals(8192, ba.getFileUsed());
+            ba.release(file);
+            assertEquals(0, ba.getFileUsed());
+            assertEquals(1 << 20, ba.getDirectUsed());
+            ba.release(direct);
+            ba.release(heap);
+            assertEquals(0, ba.getDirectUsed());
+            assertEquals(0, ba.getHeapUsed());
+        }
+    }
+
+    @Test
+    public void releasedDirectBuffersAreFreed() throws IOException {
+        try (AdaptiveBufferAllocator ba = new AdaptiveBufferAllocator(0, 64 << 20,
+                System.getProperty("java.io.tmpdir"))) {
+            long before = directMemoryUsed();
+            ByteBuffer direct = ba.allocate(32 << 20);
+            assertTrue(directMemoryUsed() >= before + (32 << 20));
+            ba.release(direct);
+            assertEquals(before, directMemoryUsed());
+        }
+    }
+
+    @Test
+    public void foreignBuffersAreIgnored() throws IOException {
+        try (AdaptiveBufferAllocator ba = new AdaptiveBufferAllocator(8192, 8192,
+                System.getProperty("java.io.tmpdir"))) {
+            ByteBuffer heap = ba.allocate(4096);
+            ByteBuffer direct = ba.allocate(8192);
+            assertTrue(direct.isDirect());
+            ba.release(ByteBuffer.allocate(4096));
+            ba.release(ByteBuffer.allocateDirect(4096));
+            assertEquals(4096, ba.getHeapUsed());
+            assertEquals(8192, ba.getDirectUsed());
+
+            ba.release(heap);
+            ba.release(heap);
+            ba.release(direct);
+            ba.release(direct);
+            assertEquals(0, ba.getHeapUsed());
+            assertEquals(0, ba.getDirectUsed());
+            // the budgets are whole again
+            assertFalse(ba.allocate(8192).isDirect());
+        }
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        throw new AssertionError("no direct buffer pool");
+    }
+}
@@ -0,0 +1,41 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class AnchorTableTest {
+
+    @Test
+    public void tableIsBoundedByMaxAnchors() {
+        byte[] data = new byte[16 << 20];
+        new Random(1).nextBytes(data);
+        LargeByteBuffer old = LargeByteBuffer.wrap(ByteBuffer.wrap(data));
+        for (int maxAnchors : new int[]{1, 1000, 1024, 4096, 1 << 18}) {
+            AnchorTable table = AnchorTable.build(old, maxAnchors);
+            assertTrue(table.capacity() <= 4 * maxAnchors);
+
+            // every sampled anchor is found, at its position or the first one of the same hash
+            long n = data.length - AnchorTable.ANCHOR_LENGTH;
+            long step = Math.max(AnchorTable.MIN_ANCHOR_STEP, (n + maxAnchors) / maxAnchors);
+            for (long pos = 0; pos <= n; pos += step) {
+                int h = AnchorTable.hash(old, pos);
+                long found = table.find(h);
+                assertTrue(found >= 0 && found <= pos);
+                assertEquals(h, AnchorTable.hash(old, found));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class BlockSpillTest {
+
+    @Test
+    public void spillsWithoutTempFileSource() throws IOException {
+        byte[] data = new byte[3 * BlockSpill.THRESHOLD + 12345];
+        new Random(1).nextBytes(data);
+        // a plain allocator gives no temp files, the default ones are used
+        BlockSpill spill = new BlockSpill(ByteBuffer::allocate);
+        try {
+            for (int off = 0, n; off < data.length; off += n) {
+                n = Math.min(8192, data.length - off);
+                spill.write(data, off, n);
+                assertEquals(off + n > BlockSpill.THRESHOLD, spill.isSpilled());
+            }
+            assertEquals(data.length, spill.size());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            spill.writeTo(out);
+            assertArrayEquals(data, out.toByteArray());
+
+            out.reset();
+            try (InputStream in = spill.inputStream()) {
+                byte[] temp = new byte[10000];
+                for (int n; (n = in.read(temp)) > 0; ) {
+                    out.write(temp, 0, n);
+                }
+            }
+            assertArrayEquals(data, out.toByteArray());
+        } finally {
+            spill.discard();
+        }
+    }
+
+    @Test
+    public void smallBlocksStayInMemory() throws IOException {
+        BlockSpill spill = new BlockSpill(ByteBuffer::allocate);
+        spill.write(new byte[BlockSpill.THRESHOLD]);
+        assertFalse(spill.isSpilled());
+        spill.write(1);
+        assertTrue(spill.isSpilled());
+        spill.discard();
+    }
+}
@@ -0,0 +1,75 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * @author Joel
+ */
+public class ByteAddTest {
+
+    // Old ranges inside, across either end and outside of old, on heap, direct and sliced buffers
+    @Test
+    public void addClipsToOld() throws IOException {
+        Random r = new Random(1);
+        for (int round = 0; round < 5000; round++) {
+            byte[] content = new byte[r.nextInt(200)];
+            r.nextBytes(content);
+            int len = r.nextInt(300);
+            long pos = r.nextInt(content.length + 200) - 100;
+            byte[] diff = new byte[len + 8];
+            r.nextBytes(diff);
+            int off = r.nextInt(8);
+            len = Math.min(len, diff.length - off);
+
+            byte[] expected = diff.clone();
+            for (int i = 0; i < len; i++) {
+                if (pos + i >= 0 && pos + i < content.length) {
+                    expected[off + i] += content[(int) (pos + i)];
+                }
+            }
+            // a scratch smaller than len for some rounds, so it is refilled
+            byte[] scratch = new byte[1 + r.nextInt(64)];
+
+            byte[] got = diff.clone();
+            ByteAdd.add(got, off, buffer(r, content), pos, len, scratch);
+            assertArrayEquals("round " + round, expected, got);
+
+            got = diff.clone();
+            ByteAdd.add(got, off, LargeByteBuffer.wrap(buffer(r, content)), pos, len, scratch);
+            assertArrayEquals("large round " + round, expected, got);
+
+            got = diff.clone();
+            ByteAdd.add(got, off, SeekableInput.of(buffer(r, content)), content.length, pos, len, scratch);
+            assertArrayEquals("seekable round " + round, expected, got);
+        }
+    }
+
+    private static ByteBuffer buffer(Random r, byte[] content) {
+        switch (r.nextInt(3)) {
+            case 0:
+                return ByteBuffer.wrap(content);
+            case 1:
+                ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+                direct.put(content).clear();
+                return direct;
+            default:
+                // an array offset
+                ByteBuffer b = ByteBuffer.allocate(content.length + 5);
+                b.position(5);
+                b = b.slice();
+                b.put(content).clear();
+                return b;
+        }
+    }
+}
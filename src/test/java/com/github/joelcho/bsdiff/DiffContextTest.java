@@ -0,0 +1,154 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Joel
+ */
+public class DiffContextTest {
+
+    @Test
+    public void concurrentDiffsShareOneContext() throws Exception {
+        byte[] old = Samples.sample(200000, 1);
+        DiffContext ctx = new DiffContext(ByteBuffer.wrap(old), new QSufSortSAISImpl());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<byte[]> news = new ArrayList<>();
+            List<Future<byte[]>> patches = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                byte[] new0 = edit(old, i);
+                news.add(new0);
+                patches.add(executor.submit(() -> diff(ctx, new0)));
+            }
+            // the same patches as one at a time
+            for (int i = 0; i < news.size(); i++) {
+                assertArrayEquals("new " + i, diff(ctx, news.get(i)), patches.get(i).get());
+                assertArrayEquals("new " + i, news.get(i), patch(old, patches.get(i).get(), news.get(i).length));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void lcpGivesIdenticalPatches() throws IOException {
+        // random text, and a short period that makes long common prefixes
+        byte[][] olds = {Samples.sample(100000, 2), new byte[100000]};
+        for (int i = 0; i < olds[1].length; i++) {
+            olds[1][i] = (byte) ('a' + i % 7 + (i % 5000 == 0 ? 1 : 0));
+        }
+        for (byte[] old : olds) {
+            DiffContext ctx = new DiffContext(ByteBuffer.wrap(old), new QSufSortSAISImpl());
+            DiffContext withLcp = ctx.withLcp(ByteBuffer::allocate);
+            for (int i = 0; i < 4; i++) {
+                byte[] new0 = edit(old, i);
+                assertArrayEquals(diff(ctx, new0), diff(withLcp, new0));
+            }
+        }
+    }
+
+    @Test
+    public void closeReleasesSortedLcpAndPackedArrays() throws IOException {
+        byte[] old = Samples.sample(20000, 1);
+        byte[] new0 = old.clone();
+        new0[100] ^= 1;
+        Set<ByteBuffer> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        BufferAllocator ba = new BufferAllocator() {
+            @Override
+            public ByteBuffer allocate(int size) {
+                ByteBuffer b = ByteBuffer.allocate(size);
+                live.add(b);
+                return b;
+            }
+
+            @Override
+            public void release(ByteBuffer buffer) {
+                live.remove(buffer);
+            }
+        };
+
+        DiffContext sorted = new DiffContext(ByteBuffer.wrap(old), new QSufSortSAISImpl(ba));
+        assertEquals(1, live.size());
+        DiffContext withLcp = sorted.withLcp(ba);
+        assertEquals(3, live.size());
+        DiffContext packed = withLcp.withCompactSuffixArray(ba);
+        // the sorted suffix array is released once packed
+        assertEquals(3, live.size());
+        closed(sorted);
+        closed(withLcp);
+
+        DiffContext derived = packed.withCodec(SectionCodec.DEFLATE);
+        assertArrayEquals(new0, patch(old, diff(derived, new0), new0.length));
+        packed.close();
+        assertEquals(0, live.size());
+        closed(derived);
+        packed.close();
+    }
+
+    @Test
+    public void indexSuffixArrayIsNotReleased() throws IOException {
+        byte[] old = Samples.sample(20000, 2);
+        SuffixArrayIndex index = SuffixArrayIndex.build(ByteBuffer.wrap(old), new QSufSortSAISImpl());
+        DiffContext ctx = new DiffContext(ByteBuffer.wrap(old), index);
+        ctx.close();
+        closed(ctx);
+        // the index still works for other contexts
+        try (DiffContext again = new DiffContext(ByteBuffer.wrap(old), index)) {
+            assertArrayEquals(old, patch(old, diff(again, old), old.length));
+        }
+    }
+
+    private static void closed(DiffContext ctx) throws IOException {
+        try {
+            ctx.diff(ByteBuffer.allocate(1), new SeekableByteArrayOutputStream());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    // Some bytes changed, and a cut or grown tail
+    private static byte[] edit(byte[] old, int seed) {
+        Random r = new Random(seed);
+        byte[] new0 = old.clone();
+        for (int n = 0; n < 50; n++) {
+            new0[r.nextInt(new0.length)] ^= 1 + r.nextInt(255);
+        }
+        int size = old.length + (seed % 2 == 0 ? -seed * 1000 : seed * 1000);
+        byte[] b = new byte[size];
+        System.arraycopy(new0, 0, b, 0, Math.min(size, new0.length));
+        return b;
+    }
+
+    private static byte[] diff(DiffContext ctx, byte[] new0) throws IOException {
+        SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+        ctx.diff(ByteBuffer.wrap(new0), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] patch(byte[] old, byte[] patch, int newsize) throws IOException {
+        byte[] out = new byte[newsize];
+        BSPatch.patch(ByteBuffer.wrap(old), ByteBuffer.wrap(out), ByteBuffer.wrap(patch));
+        return out;
+    }
+}
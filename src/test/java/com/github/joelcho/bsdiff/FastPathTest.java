@@ -0,0 +1,126 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The common prefix and suffix matching of {@link BSDiff#diff(ByteBuffer, ByteBuffer, SeekableOutputStream,
+ * BufferAllocator, QSufSort)}: which inputs are sorted, and how much of them.
+ *
+ * @author Joel
+ */
+public class FastPathTest {
+    private static final byte[] OLD = Samples.sample(30000, 1);
+    private static final byte[] TAIL = Samples.sample(5000, 2);
+
+    // records the length of every sort
+    private final List<Integer> sorted = new ArrayList<>();
+    private final QSufSort sort = new QSufSort() {
+        private final QSufSort sais = new QSufSortSAISImpl();
+
+        @Override
+        public IntBuffer sort(ByteBuffer buffer, int length) throws IOException {
+            sorted.add(length);
+            return sais.sort(buffer, length);
+        }
+    };
+
+    @Test
+    public void identical() throws IOException {
+        byte[] patch = roundtrip(OLD, OLD.clone());
+        assertEquals(0, sorted.size());
+        // header and a single ctrl, the diff block is all zeros
+        assertTrue(patch.length < 200);
+    }
+
+    @Test
+    public void appended() throws IOException {
+        roundtrip(OLD, concat(OLD, TAIL));
+        assertEquals(0, sorted.size());
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        roundtrip(OLD, Arrays.copyOf(OLD, 20000));
+        assertEquals(0, sorted.size());
+    }
+
+    @Test
+    public void prepended() throws IOException {
+        roundtrip(OLD, concat(TAIL, OLD));
+        assertEquals(0, sorted.size());
+    }
+
+    @Test
+    public void insertedAndRemovedInTheMiddle() throws IOException {
+        byte[] inserted = concat(Arrays.copyOf(OLD, 10000), TAIL, Arrays.copyOfRange(OLD, 10000, OLD.length));
+        roundtrip(OLD, inserted);
+        roundtrip(inserted, OLD);
+        assertEquals(0, sorted.size());
+    }
+
+    @Test
+    public void onlyTheMiddleIsSorted() throws IOException {
+        byte[] new0 = OLD.clone();
+        new0[10000] ^= 1;
+        new0[12000] ^= 1;
+        roundtrip(OLD, new0);
+        assertEquals(Arrays.asList(12000 - 10000 + 1), sorted);
+    }
+
+    @Test
+    public void noCommonPartSortsEverything() throws IOException {
+        byte[] new0 = OLD.clone();
+        new0[0] ^= 1;
+        new0[new0.length - 1] ^= 1;
+        roundtrip(OLD, new0);
+        assertEquals(Arrays.asList(OLD.length), sorted);
+    }
+
+    @Test
+    public void emptyFiles() throws IOException {
+        roundtrip(new byte[0], new byte[0]);
+        roundtrip(new byte[0], OLD);
+        roundtrip(OLD, new byte[0]);
+        assertEquals(0, sorted.size());
+    }
+
+    private byte[] roundtrip(byte[] old, byte[] new0) throws IOException {
+        SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+        BSDiff.diff(ByteBuffer.wrap(old), ByteBuffer.wrap(new0), out, ByteBuffer::allocate, sort);
+        byte[] patch = out.toByteArray();
+        byte[] patched = new byte[new0.length];
+        BSPatch.patch(ByteBuffer.wrap(old), ByteBuffer.wrap(patched), ByteBuffer.wrap(patch));
+        assertArrayEquals(new0, patched);
+        return patch;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int size = 0;
+        for (byte[] part : parts) {
+            size += part.length;
+        }
+        byte[] b = new byte[size];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, b, pos, part.length);
+            pos += part.length;
+        }
+        return b;
+    }
+}
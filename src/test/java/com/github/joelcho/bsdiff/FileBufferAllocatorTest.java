@@ -0,0 +1,82 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class FileBufferAllocatorTest {
+
+    @Test
+    public void freeSlabsAreMergedAndTruncated() throws IOException {
+        try (FileBufferAllocator ba = new FileBufferAllocator()) {
+            for (int round = 1; round <= 20; round++) {
+                List<ByteBuffer> buffers = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    buffers.add(ba.allocate(round * 4096 * (i + 1)));
+                }
+                // release out of order, the end of the file goes last
+                for (int i = 0; i < buffers.size(); i += 2) {
+                    ba.release(buffers.get(i));
+                }
+                for (int i = 1; i < buffers.size(); i += 2) {
+                    ba.release(buffers.get(i));
+                }
+                assertEquals(0, ba.getSlabSize());
+            }
+        }
+    }
+
+    @Test
+    public void reusedSlabsDoNotOverlap() throws IOException {
+        Random r = new Random(1);
+        try (FileBufferAllocator ba = new FileBufferAllocator()) {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            List<Byte> fills = new ArrayList<>();
+            long live = 0;
+            for (int step = 0; step < 2000; step++) {
+                if (buffers.isEmpty() || r.nextInt(3) > 0) {
+                    ByteBuffer b = ba.allocate(1 + r.nextInt(64 * 1024));
+                    for (int i = 0; i < b.limit(); i++) {
+                        assertEquals(0, b.get(i));
+                    }
+                    byte fill = (byte) (1 + r.nextInt(255));
+                    for (int i = 0; i < b.limit(); i++) {
+                        b.put(i, fill);
+                    }
+                    buffers.add(b);
+                    fills.add(fill);
+                    live += (b.limit() + 4095) & -4096;
+                } else {
+                    int k = r.nextInt(buffers.size());
+                    ByteBuffer b = buffers.remove(k);
+                    byte fill = fills.remove(k);
+                    for (int i = 0; i < b.limit(); i++) {
+                        assertEquals(fill, b.get(i));
+                    }
+                    live -= (b.limit() + 4095) & -4096;
+                    ba.release(b);
+                }
+                assertTrue(ba.getSlabSize() >= live);
+            }
+            for (ByteBuffer b : buffers) {
+                ba.release(b);
+            }
+            assertEquals(0, ba.getSlabSize());
+        }
+    }
+}
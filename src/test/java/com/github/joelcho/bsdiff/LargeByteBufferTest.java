@@ -0,0 +1,70 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class LargeByteBufferTest {
+
+    @Test
+    public void wrapIndexesPastOneSegment() throws IOException {
+        final long size = LargeByteBuffer.SEGMENT_SIZE + 16L;
+        File file = File.createTempFile("bsdiff", ".large");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // a sparse file, only the touched pages take space
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            try {
+                final int last = LargeByteBuffer.SEGMENT_SIZE + 8;
+                buffer.put(LargeByteBuffer.SEGMENT_SIZE - 1, (byte) 1);
+                buffer.put(LargeByteBuffer.SEGMENT_SIZE, (byte) 2);
+                buffer.put(last, (byte) 3);
+
+                LargeByteBuffer b = LargeByteBuffer.wrap(buffer);
+                assertEquals(size, b.size());
+                assertTrue(b.isSmall());
+                assertEquals(1, b.get(LargeByteBuffer.SEGMENT_SIZE - 1));
+                assertEquals(2, b.get(LargeByteBuffer.SEGMENT_SIZE));
+                assertEquals(3, b.get(last));
+                assertEquals(3, b.asByteBuffer().get(last));
+
+                // bulk reads and writes across the segment boundary
+                byte[] got = new byte[4];
+                b.get(LargeByteBuffer.SEGMENT_SIZE - 2, got, 0, got.length);
+                assertArrayEquals(new byte[]{0, 1, 2, 0}, got);
+                b.put(LargeByteBuffer.SEGMENT_SIZE - 2, new byte[]{5, 6, 7, 8}, 0, 4);
+                assertEquals(6, buffer.get(LargeByteBuffer.SEGMENT_SIZE - 1));
+                assertEquals(7, buffer.get(LargeByteBuffer.SEGMENT_SIZE));
+                b.put(last + 1, (byte) 4);
+                assertEquals(4, buffer.get(last + 1));
+
+                SeekableInput in = SeekableInput.of(buffer);
+                got = new byte[16];
+                assertEquals(8, in.read(last, got, 0, got.length));
+                assertEquals(3, got[0]);
+                assertEquals(4, got[1]);
+                assertEquals(-1, in.read(size, got, 0, got.length));
+            } finally {
+                Unmapper.unmap(buffer);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Joel
+ */
+public class LargeLongArrayTest {
+
+    @Test
+    public void failedAllocationReleasesSegments() {
+        List<ByteBuffer> live = new ArrayList<>();
+        BufferAllocator ba = new BufferAllocator() {
+            @Override
+            public ByteBuffer allocate(int size) throws IOException {
+                if (live.size() == 2) {
+                    throw new IOException("out of space");
+                }
+                // the content is never read, only the bookkeeping matters
+                ByteBuffer b = ByteBuffer.allocate(Long.BYTES);
+                live.add(b);
+                return b;
+            }
+
+            @Override
+            public void release(ByteBuffer buffer) {
+                live.remove(buffer);
+            }
+        };
+        try {
+            new LargeLongArray(ba, 3L << 27);
+            fail();
+        } catch (IOException e) {
+            assertEquals(0, live.size());
+        }
+    }
+}
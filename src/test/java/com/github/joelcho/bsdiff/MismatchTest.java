@@ -0,0 +1,93 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Joel
+ */
+public class MismatchTest {
+
+    @Test
+    public void baseVersion() throws Exception {
+        check(Mismatch.class.getDeclaredMethod("mismatch",
+                ByteBuffer.class, int.class, ByteBuffer.class, int.class, int.class, int.class));
+    }
+
+    // The tests run on target/classes, the JDK 11 version is loaded from the versioned directory
+    @Test
+    public void java11Version() throws Exception {
+        File classes = new File(Mismatch.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File versioned = new File(classes, "META-INF/versions/11");
+        Assume.assumeTrue(versioned.isDirectory());
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{versioned.toURI().toURL()}, null)) {
+            Class<?> c = Class.forName(Mismatch.class.getName(), true, loader);
+            check(c.getDeclaredMethod("mismatch",
+                    ByteBuffer.class, int.class, ByteBuffer.class, int.class, int.class, int.class));
+        }
+    }
+
+    private static void check(Method mismatch) throws Exception {
+        mismatch.setAccessible(true);
+        Random r = new Random(1);
+        for (int round = 0; round < 20000; round++) {
+            int len = r.nextInt(4) == 0 ? r.nextInt(16) : r.nextInt(300);
+            int apos = r.nextInt(9), bpos = r.nextInt(9);
+            byte[] content = new byte[len];
+            r.nextBytes(content);
+            ByteBuffer a = buffer(r, apos + len + r.nextInt(9));
+            ByteBuffer b = buffer(r, bpos + len + r.nextInt(9));
+            for (int i = 0; i < len; i++) {
+                a.put(apos + i, content[i]);
+                b.put(bpos + i, content[i]);
+            }
+            // none, one or a few differing bytes
+            for (int n = r.nextInt(3); n > 0 && len > 0; n--) {
+                int i = r.nextInt(len);
+                b.put(bpos + i, (byte) (content[i] + 1 + r.nextInt(255)));
+            }
+            int expected = 0;
+            while (expected < len && a.get(apos + expected) == b.get(bpos + expected)) {
+                expected++;
+            }
+            // the first from bytes are known equal
+            int from = r.nextInt(expected + 1);
+            assertEquals(expected, mismatch.invoke(null, a, apos, b, bpos, from, len));
+        }
+    }
+
+    // Heap, direct or a slice with an array offset, in either byte order
+    private static ByteBuffer buffer(Random r, int size) {
+        ByteBuffer b;
+        switch (r.nextInt(3)) {
+            case 0:
+                b = ByteBuffer.allocate(size);
+                break;
+            case 1:
+                b = ByteBuffer.allocateDirect(size);
+                break;
+            default:
+                int offset = 1 + r.nextInt(7);
+                b = ByteBuffer.allocate(offset + size);
+                b.position(offset);
+                b = b.slice();
+                break;
+        }
+        return b.order(r.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+}
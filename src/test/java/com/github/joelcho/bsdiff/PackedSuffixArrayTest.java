@@ -0,0 +1,77 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Joel
+ */
+public class PackedSuffixArrayTest {
+
+    @Test
+    public void bitsOf() {
+        assertEquals(1, PackedSuffixArray.bitsOf(0));
+        assertEquals(1, PackedSuffixArray.bitsOf(1));
+        assertEquals(2, PackedSuffixArray.bitsOf(2));
+        assertEquals(2, PackedSuffixArray.bitsOf(3));
+        assertEquals(3, PackedSuffixArray.bitsOf(4));
+        assertEquals(31, PackedSuffixArray.bitsOf(Integer.MAX_VALUE));
+    }
+
+    // Any values up to oldsize, so every bit of every entry is checked, around word and bit width boundaries
+    @Test
+    public void packedEntriesAreUnchanged() throws IOException {
+        Random r = new Random(1);
+        int[] sizes = {0, 1, 2, 3, 7, 8, 31, 32, 63, 64, 65, 127, 1000, 65535, 65536, 100000};
+        for (int oldsize : sizes) {
+            int[] values = new int[oldsize + 1];
+            for (int i = 0; i <= oldsize; i++) {
+                values[i] = i % 3 == 0 ? oldsize : r.nextInt(oldsize + 1);
+            }
+            PackedSuffixArray packed = PackedSuffixArray.pack(SuffixArray.of(IntBuffer.wrap(values)), oldsize,
+                    ByteBuffer::allocate);
+            for (int i = 0; i <= oldsize; i++) {
+                assertEquals("size " + oldsize + " at " + i, values[i], packed.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void releaseGivesTheWordsBack() throws IOException {
+        List<ByteBuffer> allocated = new ArrayList<>();
+        List<ByteBuffer> released = new ArrayList<>();
+        BufferAllocator ba = new BufferAllocator() {
+            @Override
+            public ByteBuffer allocate(int size) {
+                ByteBuffer b = ByteBuffer.allocate(size);
+                allocated.add(b);
+                return b;
+            }
+
+            @Override
+            public void release(ByteBuffer buffer) {
+                released.add(buffer);
+            }
+        };
+        PackedSuffixArray packed = PackedSuffixArray.pack(SuffixArray.of(IntBuffer.wrap(new int[]{3, 2, 1, 0})), 3, ba);
+        assertEquals(1, allocated.size());
+        assertEquals(PackedSuffixArray.sizeOf(3), allocated.get(0).capacity());
+        packed.release(ba);
+        assertEquals(1, released.size());
+        assertSame(allocated.get(0), released.get(0));
+    }
+}
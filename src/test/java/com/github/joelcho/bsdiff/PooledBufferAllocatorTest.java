@@ -0,0 +1,143 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class PooledBufferAllocatorTest {
+
+    // Counts the allocations and keeps the buffers not released yet
+    private static final class Backing implements BufferAllocator {
+        final Set<ByteBuffer> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        int allocations;
+
+        @Override
+        public synchronized ByteBuffer allocate(int size) {
+            allocations++;
+            ByteBuffer b = ByteBuffer.allocate(size);
+            live.add(b);
+            return b;
+        }
+
+        @Override
+        public synchronized void release(ByteBuffer buffer) {
+            live.remove(buffer);
+        }
+    }
+
+    @Test
+    public void sizeClasses() {
+        assertEquals(4096, PooledBufferAllocator.sizeClass(0));
+        assertEquals(4096, PooledBufferAllocator.sizeClass(4096));
+        assertEquals(6144, PooledBufferAllocator.sizeClass(4097));
+        assertEquals(8192, PooledBufferAllocator.sizeClass(6145));
+        assertEquals(3 << 29, PooledBufferAllocator.sizeClass((1 << 30) + 1));
+        assertEquals(Integer.MAX_VALUE, PooledBufferAllocator.sizeClass(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void releasedBuffersAreReusedZeroed() throws IOException {
+        Backing backing = new Backing();
+        PooledBufferAllocator pool = new PooledBufferAllocator(backing, 1 << 20);
+        ByteBuffer a = pool.allocate(5000);
+        assertEquals(5000, a.capacity());
+        a.put(4999, (byte) 1);
+        pool.release(a);
+        assertEquals(6144, pool.getPooled());
+
+        // same size class
+        ByteBuffer b = pool.allocate(6000);
+        assertEquals(1, backing.allocations);
+        assertEquals(0, pool.getPooled());
+        assertEquals(6000, b.capacity());
+        assertArrayEquals(new byte[6000], contentOf(b));
+
+        // another size class
+        pool.allocate(100);
+        assertEquals(2, backing.allocations);
+    }
+
+    @Test
+    public void buffersBeyondTheBoundGoBack() throws IOException {
+        Backing backing = new Backing();
+        PooledBufferAllocator pool = new PooledBufferAllocator(backing, 8192);
+        ByteBuffer a = pool.allocate(4096), b = pool.allocate(4096), c = pool.allocate(4096);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(8192, pool.getPooled());
+        assertEquals(2, backing.live.size());
+
+        // buffers not from the pool are ignored, released twice too
+        pool.release(ByteBuffer.allocate(4096));
+        pool.release(a);
+        assertEquals(8192, pool.getPooled());
+
+        pool.close();
+        assertEquals(0, pool.getPooled());
+        assertEquals(0, backing.live.size());
+    }
+
+    @Test
+    public void arenaReleasesWhatIsLeft() throws IOException {
+        Backing backing = new Backing();
+        BufferArena arena = new BufferArena(backing);
+        ByteBuffer a = arena.allocate(10);
+        arena.allocate(20);
+        arena.allocate(30);
+        arena.release(a);
+        assertEquals(2, backing.live.size());
+        arena.close();
+        assertEquals(0, backing.live.size());
+        // nothing is released twice
+        arena.close();
+    }
+
+    @Test
+    public void backToBackDiffsReuseThePool() throws IOException {
+        byte[] old = Samples.sample(100000, 1);
+        byte[] new0 = Samples.sample(100000, 2);
+        Backing backing = new Backing();
+        try (PooledBufferAllocator pool = new PooledBufferAllocator(backing, 16 << 20)) {
+            byte[] first = null;
+            int allocations = 0;
+            for (int round = 0; round < 3; round++) {
+                SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+                try (BufferArena arena = new BufferArena(pool)) {
+                    BSDiff.diff(ByteBuffer.wrap(old), ByteBuffer.wrap(new0), out, arena);
+                }
+                if (round == 0) {
+                    first = out.toByteArray();
+                    allocations = backing.allocations;
+                    assertTrue(allocations > 0);
+                } else {
+                    assertArrayEquals(first, out.toByteArray());
+                    assertEquals(allocations, backing.allocations);
+                }
+            }
+        }
+        assertEquals(0, backing.live.size());
+    }
+
+    private static byte[] contentOf(ByteBuffer buffer) {
+        byte[] b = new byte[buffer.capacity()];
+        buffer.duplicate().get(b);
+        return b;
+    }
+}
@@ -0,0 +1,129 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Joel
+ */
+public class PreparedPatchTest {
+    private static byte[] patch;
+    private static long patchSize;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        byte[] old = Samples.sample(20000, 1);
+        byte[] new0 = Samples.sample(20000, 2);
+        SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+        BSDiff.diff(ByteBuffer.wrap(old), ByteBuffer.wrap(new0), out, ByteBuffer::allocate, new QSufSortSAISImpl());
+        patch = out.toByteArray();
+        patchSize = PreparedPatch.prepare(ByteBuffer.wrap(patch)).size();
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        final int threads = 8;
+        CountDownLatch entered = new CountDownLatch(threads);
+        AtomicInteger loads = new AtomicInteger();
+        PreparedPatch.Cache<String> cache = new PreparedPatch.Cache<>(Long.MAX_VALUE, key -> {
+            loads.incrementAndGet();
+            try {
+                // let the other threads reach the cache while this one is loading
+                entered.await();
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return ByteBuffer.wrap(patch);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<PreparedPatch>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    entered.countDown();
+                    return cache.get("a");
+                }));
+            }
+            PreparedPatch first = results.get(0).get();
+            for (Future<PreparedPatch> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(patchSize, cache.size());
+    }
+
+    @Test
+    public void failedLoadIsNotCached() throws IOException {
+        AtomicInteger loads = new AtomicInteger();
+        PreparedPatch.Cache<String> cache = new PreparedPatch.Cache<>(Long.MAX_VALUE, key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IOException("unavailable");
+            }
+            return ByteBuffer.wrap(patch);
+        });
+        try {
+            cache.get("a");
+            fail();
+        } catch (IOException e) {
+            assertEquals("unavailable", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+        cache.get("a");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedAreEvictedBySize() throws IOException {
+        Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        PreparedPatch.Cache<String> cache = new PreparedPatch.Cache<>(2 * patchSize, key -> {
+            loads.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            return ByteBuffer.wrap(patch);
+        });
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2 * patchSize, cache.size());
+        // a is used again, so b is the least recently used when c is added
+        cache.get("a");
+        cache.get("c");
+        assertEquals(2 * patchSize, cache.size());
+        cache.get("a");
+        cache.get("c");
+        assertEquals(1, loads.get("a").get());
+        assertEquals(1, loads.get("c").get());
+        cache.get("b");
+        assertEquals(2, loads.get("b").get());
+
+        cache.invalidate("b");
+        assertEquals(patchSize, cache.size());
+
+        // a patch bigger than the bound is returned but not kept
+        PreparedPatch.Cache<String> small = new PreparedPatch.Cache<>(patchSize - 1, key -> ByteBuffer.wrap(patch));
+        small.get("a");
+        assertEquals(0, small.size());
+    }
+}
@@ -0,0 +1,102 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every sorter against {@link QSufSortByteBufferImpl}, a suffix array is unique.
+ *
+ * @author Joel
+ */
+public class QSufSortTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void byteArrayImpl() throws IOException {
+        assertSameAsByteBuffer(new QSufSortByteArrayImpl());
+    }
+
+    @Test
+    public void parallelImpl() throws IOException {
+        assertSameAsByteBuffer(new QSufSortParallelImpl(pool));
+    }
+
+    @Test
+    public void saisImpl() throws IOException {
+        assertSameAsByteBuffer(new QSufSortSAISImpl());
+        assertSameAsByteBuffer(new QSufSortSAISImpl(ByteBuffer::allocateDirect));
+    }
+
+    private static void assertSameAsByteBuffer(QSufSort sort) throws IOException {
+        QSufSort expected = new QSufSortByteBufferImpl(ByteBuffer::allocate);
+        Random r = new Random(1);
+        for (int round = 0; round < 400; round++) {
+            byte[] input = input(r, round);
+            String message = "round " + round + " length " + input.length;
+            IntBuffer want = expected.sort(ByteBuffer.wrap(input), input.length);
+            IntBuffer got = sort.sort(ByteBuffer.wrap(input), input.length);
+            for (int i = 0; i <= input.length; i++) {
+                assertEquals(message + " at " + i, want.get(i), got.get(i));
+            }
+        }
+        // big enough to split the groups into parallel tasks
+        byte[] input = Samples.sample(300000, 2);
+        IntBuffer want = expected.sort(ByteBuffer.wrap(input), input.length);
+        IntBuffer got = sort.sort(ByteBuffer.wrap(input), input.length);
+        for (int i = 0; i <= input.length; i++) {
+            assertEquals("sample at " + i, want.get(i), got.get(i));
+        }
+    }
+
+    // Short and empty inputs, one to four letter alphabets, whole random bytes, and periodic runs
+    static byte[] input(Random r, int round) {
+        int len = round < 8 ? round : r.nextInt(round % 4 == 0 ? 20000 : 600);
+        byte[] b = new byte[len];
+        switch (round % 5) {
+            case 0:
+                r.nextBytes(b);
+                break;
+            case 4:
+                // a period of 1 to 9 bytes repeated, with a few edits
+                int period = 1 + r.nextInt(9);
+                for (int i = 0; i < len; i++) {
+                    b[i] = (byte) (i % period == 0 ? 'x' : 'a' + i % period);
+                }
+                for (int n = r.nextInt(3); n > 0 && len > 0; n--) {
+                    b[r.nextInt(len)] = 'y';
+                }
+                break;
+            default:
+                int letters = round % 5;
+                for (int i = 0; i < len; i++) {
+                    b[i] = (byte) ('a' + r.nextInt(letters));
+                }
+                break;
+        }
+        return b;
+    }
+}
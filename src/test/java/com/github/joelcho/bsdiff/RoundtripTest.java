@@ -0,0 +1,183 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Every diff path against every patch path, for each codec, with diff and extra blocks bigger than
+ * a piece of {@link ParallelCompressor}.
+ *
+ * @author Joel
+ */
+public class RoundtripTest {
+    private static final SectionCodec[] CODECS = {
+            SectionCodec.BZIP2, SectionCodec.DEFLATE, SectionCodec.LZ4, SectionCodec.RAW
+    };
+
+    private static ForkJoinPool pool;
+    private static byte[] old;
+    private static byte[] new0;
+
+    @BeforeClass
+    public static void setUp() {
+        pool = new ForkJoinPool(2);
+        old = Samples.sample(1200000, 1);
+        // edited copy of old with 1 MB of new bytes in the middle, a moved range and a cut tail
+        Random r = new Random(2);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] head = old.clone();
+        for (int i = 0; i < 600000; i += 1 + r.nextInt(200)) {
+            head[i] ^= 1 + r.nextInt(255);
+        }
+        bos.write(head, 0, 600000);
+        // random, so it is all extra bytes
+        byte[] inserted = new byte[1000000];
+        r.nextBytes(inserted);
+        bos.write(inserted, 0, inserted.length);
+        bos.write(old, 900000, 250000);
+        bos.write(old, 600000, 300000);
+        new0 = bos.toByteArray();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    private interface Differ {
+        void diff(ByteBuffer old, ByteBuffer new0, SeekableOutputStream out, SectionCodec codec) throws IOException;
+    }
+
+    private static byte[] diff(byte[] old, byte[] new0, SectionCodec codec, Differ differ) throws IOException {
+        SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+        differ.diff(ByteBuffer.wrap(old), ByteBuffer.wrap(new0), out, codec);
+        return out.toByteArray();
+    }
+
+    // Apply the patch by every patch path
+    private static void assertPatches(String message, byte[] old, byte[] new0, byte[] patch) throws IOException {
+        byte[] out = new byte[new0.length];
+        BSPatch.patch(ByteBuffer.wrap(old), ByteBuffer.wrap(out), ByteBuffer.wrap(patch));
+        assertArrayEquals(message + " buffers", new0, out);
+
+        ByteBuffer directOld = ByteBuffer.allocateDirect(old.length);
+        directOld.put(old).clear();
+        ByteBuffer directNew = ByteBuffer.allocateDirect(new0.length);
+        BSPatch.patch(directOld, directNew, ByteBuffer.wrap(patch));
+        out = new byte[new0.length];
+        directNew.get(out);
+        assertArrayEquals(message + " direct buffers", new0, out);
+
+        out = new byte[new0.length];
+        BSPatch.patch(ByteBuffer.wrap(old), ByteBuffer.wrap(out), ByteBuffer.wrap(patch), pool);
+        assertArrayEquals(message + " parallel", new0, out);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BSPatch.patch(SeekableInput.of(ByteBuffer.wrap(old)), SeekableInput.of(ByteBuffer.wrap(patch)), bos);
+        assertArrayEquals(message + " streaming", new0, bos.toByteArray());
+
+        bos = new ByteArrayOutputStream();
+        try (FileBufferAllocator ba = new FileBufferAllocator()) {
+            BSPatch.patch(SeekableInput.of(ByteBuffer.wrap(old)), new ByteArrayInputStream(patch), bos, ba);
+        }
+        assertArrayEquals(message + " input stream", new0, bos.toByteArray());
+
+        PreparedPatch prepared = PreparedPatch.prepare(ByteBuffer.wrap(patch));
+        out = new byte[prepared.newSize()];
+        prepared.applyTo(ByteBuffer.wrap(old), ByteBuffer.wrap(out));
+        assertArrayEquals(message + " prepared", new0, out);
+        bos = new ByteArrayOutputStream();
+        prepared.applyTo(SeekableInput.of(ByteBuffer.wrap(old)), bos);
+        assertArrayEquals(message + " prepared streaming", new0, bos.toByteArray());
+    }
+
+    private static void assertRoundtrip(String name, Differ differ) throws IOException {
+        for (SectionCodec codec : CODECS) {
+            String message = name + " " + new String(codec.getMagic());
+            assertPatches(message, old, new0, diff(old, new0, codec, differ));
+        }
+    }
+
+    @Test
+    public void sequential() throws IOException {
+        assertRoundtrip("sequential", (o, n, out, codec) ->
+                BSDiff.diff(o, n, out, ByteBuffer::allocate, new QSufSortSAISImpl(), codec));
+    }
+
+    @Test
+    public void context() throws IOException {
+        assertRoundtrip("context", (o, n, out, codec) ->
+                new DiffContext(o, new QSufSortSAISImpl()).withCodec(codec).diff(n, out));
+    }
+
+    @Test
+    public void parallelScan() throws IOException {
+        assertRoundtrip("parallel scan", (o, n, out, codec) ->
+                new DiffContext(o, new QSufSortSAISImpl()).withCodec(codec)
+                        .diff(n, out, ByteBuffer::allocate, pool, 4));
+    }
+
+    @Test
+    public void pipelined() throws IOException {
+        assertRoundtrip("pipelined", (o, n, out, codec) ->
+                new DiffContext(o, new QSufSortSAISImpl()).withCodec(codec).withPipelinedCompression().diff(n, out));
+    }
+
+    @Test
+    public void parallelCompression() throws IOException {
+        assertRoundtrip("parallel compression", (o, n, out, codec) ->
+                new DiffContext(o, new QSufSortSAISImpl()).withCodec(codec).withParallelCompression(pool)
+                        .diff(n, out, ByteBuffer::allocate, pool, 4));
+    }
+
+    @Test
+    public void anchored() throws IOException {
+        assertRoundtrip("anchored", (o, n, out, codec) ->
+                new DiffContext(o, new QSufSortSAISImpl()).withCodec(codec).withAnchorPrematch()
+                        .withCompactSuffixArray(ByteBuffer::allocate).diff(n, out));
+    }
+
+    @Test
+    public void large() throws IOException {
+        assertRoundtrip("large", (o, n, out, codec) ->
+                LargeBSDiff.diff(LargeByteBuffer.wrap(o), LargeByteBuffer.wrap(n), out, ByteBuffer::allocate,
+                        Compression.SEQUENTIAL.withCodec(codec)));
+    }
+
+    @Test
+    public void windowed() throws IOException {
+        SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+        BSDiff.diff(LargeByteBuffer.wrap(ByteBuffer.wrap(old)), LargeByteBuffer.wrap(ByteBuffer.wrap(new0)), out,
+                ByteBuffer::allocate, new QSufSortSAISImpl(), 1 << 19);
+        assertPatches("windowed", old, new0, out.toByteArray());
+    }
+
+    @Test
+    public void emptyFiles() throws IOException {
+        byte[][] files = {new byte[0], old};
+        for (byte[] o : files) {
+            for (byte[] n : files) {
+                for (SectionCodec codec : CODECS) {
+                    byte[] patch = diff(o, n, codec, (ob, nb, out, c) ->
+                            BSDiff.diff(ob, nb, out, ByteBuffer::allocate, new QSufSortSAISImpl(), c));
+                    assertPatches("empty " + new String(codec.getMagic()), o, n, patch);
+                }
+            }
+        }
+    }
+}
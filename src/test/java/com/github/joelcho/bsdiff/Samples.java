@@ -0,0 +1,34 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import java.util.Random;
+
+/**
+ * Test inputs.
+ *
+ * @author Joel
+ */
+final class Samples {
+    private static final byte[] TEXT = "the quick brown fox jumps over the lazy dog ".getBytes();
+
+    private Samples() {
+    }
+
+    // 4 KB runs of text or random bytes
+    static byte[] sample(int size, long seed) {
+        Random r = new Random(seed);
+        byte[] b = new byte[size];
+        for (int run = 0; run < size; run += 4096) {
+            boolean random = r.nextInt(4) == 0;
+            int phase = r.nextInt(TEXT.length);
+            for (int i = run; i < Math.min(size, run + 4096); i++) {
+                b[i] = random ? (byte) r.nextInt() : TEXT[(i + phase) % TEXT.length];
+            }
+        }
+        return b;
+    }
+}
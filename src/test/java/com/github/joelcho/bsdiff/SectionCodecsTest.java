@@ -0,0 +1,122 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joel
+ */
+public class SectionCodecsTest {
+    private static final SectionCodec[] CODECS = {
+            SectionCodec.BZIP2, SectionCodec.DEFLATE, SectionCodec.LZ4, SectionCodec.RAW
+    };
+
+    private static byte[] compress(SectionCodec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(bos)) {
+            out.write(data);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] compressParallel(SectionCodec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelCompressor out = new ParallelCompressor(bos, pool, codec);
+            out.write(data);
+            out.finish();
+        } finally {
+            pool.shutdown();
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] decompress(SectionCodec codec, InputStream in) throws IOException {
+        return readAll(codec.decompress(in));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream cIn = in) {
+            byte[] buf = new byte[8192];
+            for (int n; (n = cIn.read(buf)) >= 0; ) {
+                bos.write(buf, 0, n);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static String name(SectionCodec codec) {
+        return new String(codec.getMagic());
+    }
+
+    // Source handing out one byte per read and never reporting available bytes, like a socket
+    private static InputStream trickle(byte[] b) {
+        return new FilterInputStream(new ByteArrayInputStream(b)) {
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                return super.read(buf, off, Math.min(len, 1));
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void roundtrip() throws IOException {
+        byte[] data = Samples.sample(100000, 1);
+        for (SectionCodec codec : CODECS) {
+            byte[] block = compress(codec, data);
+            assertArrayEquals(name(codec), data, decompress(codec, new ByteArrayInputStream(block)));
+            assertArrayEquals(name(codec), data, decompress(codec, trickle(block)));
+        }
+    }
+
+    @Test
+    public void roundtripEmpty() throws IOException {
+        for (SectionCodec codec : CODECS) {
+            byte[] block = compressParallel(codec, new byte[0]);
+            assertArrayEquals(name(codec), new byte[0], decompress(codec, new ByteArrayInputStream(block)));
+        }
+    }
+
+    @Test
+    public void concatenatedStreams() throws IOException {
+        byte[] data = Samples.sample(ParallelCompressor.BLOCK_SIZE * 3 + 12345, 2);
+        for (SectionCodec codec : CODECS) {
+            byte[] block = compressParallel(codec, data);
+            assertArrayEquals(name(codec), data, decompress(codec, new ByteArrayInputStream(block)));
+            assertArrayEquals(name(codec), data, decompress(codec, trickle(block)));
+            assertArrayEquals(name(codec), data, readAll(BSPatch.mkbzi(ByteBuffer.wrap(block), 0, block.length, codec)));
+        }
+    }
+
+    @Test
+    public void streamStarts() throws IOException {
+        byte[] data = Samples.sample(ParallelCompressor.BLOCK_SIZE * 3 + 12345, 3);
+        for (SectionCodec codec : new SectionCodec[]{SectionCodec.BZIP2, SectionCodec.LZ4}) {
+            int[] starts = SectionCodecs.streamStarts(codec, ByteBuffer.wrap(compressParallel(codec, data)));
+            assertTrue(name(codec), starts.length >= 4);
+        }
+    }
+}
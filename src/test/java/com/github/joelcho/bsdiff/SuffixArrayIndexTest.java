@@ -0,0 +1,103 @@
+// File created at: Saturday, October 17, 2026
+// File encoding  : UTF-8
+// Line separator : LF
+// Tab stop       : 4 spaces
+// IDE            : IntelliJ IDEA community edition
+package com.github.joelcho.bsdiff;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Joel
+ */
+public class SuffixArrayIndexTest {
+    private File file;
+    private byte[] old;
+    private SuffixArrayIndex built;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("bsdiff", ".sa");
+        old = Samples.sample(50000, 1);
+        built = SuffixArrayIndex.build(ByteBuffer.wrap(old), new QSufSortSAISImpl());
+        built.save(file);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        SuffixArrayIndex loaded = SuffixArrayIndex.load(file, ByteBuffer.wrap(old));
+        assertEquals(old.length, loaded.getOldSize());
+        assertArrayEquals(built.getChecksum(), loaded.getChecksum());
+        IntBuffer want = built.getSuffixArray(), got = loaded.getSuffixArray();
+        assertEquals(old.length + 1, got.remaining());
+        for (int i = 0; i <= old.length; i++) {
+            assertEquals(want.get(i), got.get(i));
+        }
+
+        byte[] new0 = old.clone();
+        new0[1000] ^= 1;
+        assertArrayEquals(diff(built, new0), diff(loaded, new0));
+    }
+
+    @Test
+    public void rejectsOtherOldFile() throws IOException {
+        byte[] edited = old.clone();
+        edited[old.length / 2] ^= 1;
+        assertRejected(edited, "index does not match the old file");
+        assertRejected(Samples.sample(old.length + 1, 1), "index does not match the old file");
+    }
+
+    @Test
+    public void rejectsOtherVersion() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(SuffixArrayIndex.MAGIC.length);
+            // little-endian
+            raf.write((int) SuffixArrayIndex.FORMAT_VERSION + 1);
+        }
+        assertRejected(old, "unsupported index version " + (SuffixArrayIndex.FORMAT_VERSION + 1));
+    }
+
+    @Test
+    public void rejectsCorruptFile() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 4);
+        }
+        assertRejected(old, "corrupt index");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write('X');
+        }
+        assertRejected(old, "corrupt index");
+    }
+
+    private void assertRejected(byte[] other, String message) {
+        try {
+            SuffixArrayIndex.load(file, ByteBuffer.wrap(other));
+            fail();
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private byte[] diff(SuffixArrayIndex index, byte[] new0) throws IOException {
+        SeekableByteArrayOutputStream out = new SeekableByteArrayOutputStream();
+        BSDiff.diff(ByteBuffer.wrap(old), ByteBuffer.wrap(new0), out, ByteBuffer::allocate, index);
+        return out.toByteArray();
+    }
+}